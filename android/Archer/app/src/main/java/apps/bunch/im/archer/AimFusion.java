@@ -0,0 +1,187 @@
+package apps.bunch.im.archer;
+
+/**
+ * Fuses the aim of the phone with the orientation of the Myo. The Myo has no compass, so its
+ * world frame starts from wherever it was synced; a one-time calibration, taken the first time
+ * both are held steady together, finds the rotation that carries the Myo onto the phone. After
+ * that the Myo gives a second estimate of where the phone points, and the two aim directions are
+ * averaged weighted by the inverse of their recent variance, so whichever is steadier counts for
+ * more. Until calibration, or without a Myo, the aim is the phone's alone.
+ * <p/>
+ * The aim is the direction of the device y axis, the top edge of the phone, in east, north, up.
+ * All quaternion math is done in place and nothing is allocated per reading. Not thread safe;
+ * both streams must be fed from the same thread.
+ */
+public class AimFusion {
+
+    // share of each reading in the running mean and variance of its stream
+    private static final double VARIANCE_WEIGHT = 0.1;
+    // floor on the variance so a perfectly still stream cannot take all the weight, rad^2
+    private static final double MIN_VARIANCE = 1e-6;
+    // both streams must be at least this steady to calibrate, about a degree, rad^2
+    private static final double CALIBRATION_VARIANCE = 3e-4;
+    // readings of each stream needed before the variance means anything
+    private static final int MIN_READINGS = 10;
+
+    private final MutableQuaternion mPhone = new MutableQuaternion();
+    private final MutableQuaternion mMyo = new MutableQuaternion();
+    // carries the Myo orientation onto the phone orientation
+    private final MutableQuaternion mAlignment = new MutableQuaternion();
+    private final MutableQuaternion mScratch = new MutableQuaternion();
+    private final Stream mPhoneStream = new Stream();
+    private final Stream mMyoStream = new Stream();
+    private final double[] mAim = new double[3];
+    private float mRoll;
+    private boolean mCalibrated;
+
+    /**
+     * Running mean and variance of the aim direction of one stream.
+     */
+    private static class Stream {
+        final double[] aim = new double[3];
+        final double[] mean = new double[3];
+        double variance;
+        int readings;
+
+        void reset() {
+            variance = 0;
+            readings = 0;
+        }
+
+        void add() {
+            if (readings++ == 0) {
+                System.arraycopy(aim, 0, mean, 0, 3);
+                variance = 0;
+                return;
+            }
+            double squared = 0;
+            for (int i = 0; i < 3; i++) {
+                double deviation = aim[i] - mean[i];
+                mean[i] += VARIANCE_WEIGHT * deviation;
+                squared += deviation * deviation;
+            }
+            variance += VARIANCE_WEIGHT * ((1 - VARIANCE_WEIGHT) * squared - variance);
+        }
+
+        boolean isSteady() {
+            return readings >= MIN_READINGS && variance < CALIBRATION_VARIANCE;
+        }
+
+        double weight() {
+            return 1 / Math.max(variance, MIN_VARIANCE);
+        }
+    }
+
+    /**
+     * @param orientation (yaw, pitch, roll) of the phone in radians
+     */
+    public void setPhoneOrientation(float[] orientation) {
+        mPhone.setOrientation(orientation[0], orientation[1], orientation[2]);
+        mRoll = orientation[2];
+        mPhone.rotate(0, 1, 0, mPhoneStream.aim);
+        mPhoneStream.add();
+        calibrateIfSteady();
+    }
+
+    /**
+     * @param w scalar part of the Myo orientation
+     * @param x first vector part
+     * @param y second vector part
+     * @param z third vector part
+     */
+    public void setMyoOrientation(double w, double x, double y, double z) {
+        mMyo.set(w, x, y, z);
+        if (mCalibrated) {
+            mScratch.multiply(mAlignment, mMyo).rotate(0, 1, 0, mMyoStream.aim);
+        } else {
+            // only steadiness matters before calibration, so any axis in its own frame will do
+            mMyo.rotate(0, 1, 0, mMyoStream.aim);
+        }
+        mMyoStream.add();
+        calibrateIfSteady();
+    }
+
+    /**
+     * Forgets the Myo and its calibration, for when it is taken off, re-synced or disconnected.
+     */
+    public void resetMyo() {
+        mCalibrated = false;
+        mMyoStream.reset();
+    }
+
+    /**
+     * Calibrates from the latest readings of both streams, steady or not.
+     *
+     * @return false if there is no reading from one of them yet
+     */
+    public boolean calibrate() {
+        if (mPhoneStream.readings == 0 || mMyoStream.readings == 0) {
+            return false;
+        }
+        mAlignment.set(mMyo).conjugate();
+        mAlignment.multiply(mPhone, mAlignment).normalize();
+        mCalibrated = true;
+        // the Myo readings so far were in its own frame
+        mMyoStream.reset();
+        return true;
+    }
+
+    /**
+     * @return true once the Myo has been calibrated against the phone
+     */
+    public boolean isCalibrated() {
+        return mCalibrated;
+    }
+
+    /**
+     * @param out receives the fused aim as a unit vector in east, north, up
+     */
+    public void getAim(double[] out) {
+        double[] phone = mPhoneStream.aim;
+        if (!mCalibrated || mMyoStream.readings < MIN_READINGS) {
+            System.arraycopy(phone, 0, out, 0, 3);
+            return;
+        }
+        double[] myo = mMyoStream.aim;
+        double phoneWeight = mPhoneStream.weight();
+        double myoWeight = mMyoStream.weight();
+        double e = phoneWeight * phone[0] + myoWeight * myo[0];
+        double n = phoneWeight * phone[1] + myoWeight * myo[1];
+        double u = phoneWeight * phone[2] + myoWeight * myo[2];
+        double norm = Math.sqrt(e * e + n * n + u * u);
+        out[0] = e / norm;
+        out[1] = n / norm;
+        out[2] = u / norm;
+    }
+
+    /**
+     * @param out receives the fused aim as (yaw, pitch, roll) in radians, as
+     *            SensorManager.getOrientation reports them, with the roll of the phone
+     */
+    public void getOrientation(float[] out) {
+        getAim(mAim);
+        out[0] = (float) Math.atan2(mAim[0], mAim[1]);
+        out[1] = (float) -Math.asin(Math.max(-1, Math.min(1, mAim[2])));
+        out[2] = mRoll;
+    }
+
+    /**
+     * @return recent variance of the phone aim in rad^2
+     */
+    public double getPhoneVariance() {
+        return mPhoneStream.variance;
+    }
+
+    /**
+     * @return recent variance of the calibrated Myo aim in rad^2
+     */
+    public double getMyoVariance() {
+        return mMyoStream.variance;
+    }
+
+    private void calibrateIfSteady() {
+        if (!mCalibrated && mPhoneStream.isSteady() && mMyoStream.isSteady()) {
+            calibrate();
+        }
+    }
+}
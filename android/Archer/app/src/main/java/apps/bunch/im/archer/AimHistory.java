@@ -0,0 +1,97 @@
+package apps.bunch.im.archer;
+
+/**
+ * The last few seconds of the aim, so it can be looked up at an instant that is only known
+ * after the fact, such as the release of the arrow reported by a pose that is classified well
+ * after it happened. Orientations are kept in a preallocated ring and interpolated between the
+ * two either side of the instant asked for, the shortest way round for the angles.
+ * <p/>
+ * Adding is O(1) and looking up O(log n), and neither allocates. Not thread safe.
+ */
+public class AimHistory {
+
+    private final long[] mTimestamps;
+    // yaw, pitch and roll of each entry
+    private final float[] mOrientations;
+    private int mCount;
+    private int mNext;
+
+    /**
+     * @param capacity orientations kept, the oldest are dropped first
+     */
+    public AimHistory(int capacity) {
+        mTimestamps = new long[capacity];
+        mOrientations = new float[3 * capacity];
+    }
+
+    public void clear() {
+        mCount = 0;
+        mNext = 0;
+    }
+
+    /**
+     * @param timestamp   of the orientation, in ns
+     * @param orientation (yaw, pitch, roll) in radians
+     * @return false if the orientation was not newer than the last and was ignored
+     */
+    public boolean add(long timestamp, float[] orientation) {
+        if (mCount > 0 && timestamp <= mTimestamps[index(mCount - 1)]) {
+            return false;
+        }
+        mTimestamps[mNext] = timestamp;
+        System.arraycopy(orientation, 0, mOrientations, 3 * mNext, 3);
+        mNext = (mNext + 1) % mTimestamps.length;
+        mCount = Math.min(mCount + 1, mTimestamps.length);
+        return true;
+    }
+
+    /**
+     * @param timestamp of the instant, in ns; outside the history the nearest end is used
+     * @param out       receives the (yaw, pitch, roll) at the instant, in radians
+     * @return false if there is no history yet
+     */
+    public boolean get(long timestamp, float[] out) {
+        if (mCount == 0) {
+            return false;
+        }
+        // first entry after the instant
+        int low = 0, high = mCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mTimestamps[index(middle)] <= timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low == 0 || low == mCount) {
+            System.arraycopy(mOrientations, 3 * index(low == 0 ? 0 : mCount - 1), out, 0, 3);
+            return true;
+        }
+        int before = index(low - 1);
+        int after = index(low);
+        float fraction = (float) (timestamp - mTimestamps[before])
+                / (mTimestamps[after] - mTimestamps[before]);
+        out[0] = interpolateAngle(mOrientations[3 * before], mOrientations[3 * after], fraction);
+        out[1] = mOrientations[3 * before + 1]
+                + fraction * (mOrientations[3 * after + 1] - mOrientations[3 * before + 1]);
+        out[2] = interpolateAngle(mOrientations[3 * before + 2], mOrientations[3 * after + 2],
+                fraction);
+        return true;
+    }
+
+    /**
+     * @return index in the ring of the i-th oldest entry
+     */
+    private int index(int i) {
+        return (mNext - mCount + i + mTimestamps.length) % mTimestamps.length;
+    }
+
+    private static float interpolateAngle(float from, float to, float fraction) {
+        double change = to - from;
+        change -= 2 * Math.PI * Math.floor((change + Math.PI) / (2 * Math.PI));
+        double angle = from + fraction * change;
+        angle -= 2 * Math.PI * Math.floor((angle + Math.PI) / (2 * Math.PI));
+        return (float) angle;
+    }
+}
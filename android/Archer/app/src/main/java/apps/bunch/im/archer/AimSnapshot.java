@@ -0,0 +1,91 @@
+package apps.bunch.im.archer;
+
+/**
+ * Latest aim and draw state, written by the sensor thread and read by the UI once per frame.
+ * Publishing is a seqlock: the writer bumps the sequence to odd, writes the fields and bumps it
+ * back to even, and a reader retries until it sees the same even sequence on both sides of its
+ * reads. Neither side ever blocks the other. The fields are volatile so the reads cannot be
+ * reordered around the sequence checks.
+ * <p/>
+ * There must be only one writer, which is the sensor thread.
+ */
+public class AimSnapshot {
+
+    private volatile int mSequence;
+    private volatile float mYaw;
+    private volatile float mPitch;
+    private volatile float mRoll;
+    private volatile long mOrientationTimestamp;
+    private volatile double mForce;
+    private volatile int mDrawSamples;
+
+    /**
+     * Plain copy of a snapshot for the reader to work from.
+     */
+    public static class Frame {
+        public float yaw; // radians, smoothed
+        public float pitch; // radians, smoothed
+        public float roll; // radians, smoothed
+        public long orientationTimestamp; // ns, 0 until the first orientation
+        public double force; // Newtons, see PhysicsEngine#TimeToForce
+        public int drawSamples; // Myo samples in the current pull
+        public int sequence; // changes whenever anything is published
+
+        /**
+         * @param out receives (yaw, pitch, roll)
+         */
+        public void getOrientation(float[] out) {
+            out[0] = yaw;
+            out[1] = pitch;
+            out[2] = roll;
+        }
+    }
+
+    /**
+     * @param orientation smoothed (yaw, pitch, roll) in radians
+     * @param timestamp   of the newest reading in the average, in ns
+     */
+    public void publishOrientation(float[] orientation, long timestamp) {
+        mSequence++;
+        mYaw = orientation[0];
+        mPitch = orientation[1];
+        mRoll = orientation[2];
+        mOrientationTimestamp = timestamp;
+        mSequence++;
+    }
+
+    /**
+     * @param force       force of the current pull, in Newtons
+     * @param drawSamples Myo samples seen in the current pull
+     */
+    public void publishDraw(double force, int drawSamples) {
+        mSequence++;
+        mForce = force;
+        mDrawSamples = drawSamples;
+        mSequence++;
+    }
+
+    /**
+     * @param out receives a consistent copy of the latest state
+     */
+    public void read(Frame out) {
+        while (true) {
+            int sequence = mSequence;
+            if ((sequence & 1) != 0) {
+                // mid-write, let the writer finish
+                Thread.yield();
+                continue;
+            }
+            out.yaw = mYaw;
+            out.pitch = mPitch;
+            out.roll = mRoll;
+            out.orientationTimestamp = mOrientationTimestamp;
+            out.force = mForce;
+            out.drawSamples = mDrawSamples;
+            if (mSequence == sequence) {
+                out.sequence = sequence;
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package apps.bunch.im.archer;
+
+/**
+ * What it takes to land an arrow at a given distance, as worked out by the inverse solvers in
+ * {@link PhysicsEngine}. Instances are meant to be reused between solves.
+ */
+public class AimSolution {
+
+    public boolean reachable; // false if the target is out of range, the fields then hold the best try
+    public double lowElevation; // radians, flat arc
+    public double highElevation; // radians, lobbed arc
+    public double force; // Newtons
+    public long pullTime; // ms of pulling that TimeToForce turns into force
+    public int iterations; // range evaluations spent
+}
@@ -4,13 +4,17 @@ import android.content.Intent;
 import android.content.IntentSender;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
+import android.hardware.SensorEventListener2;
 import android.hardware.SensorManager;
 import android.location.Location;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.v4.app.FragmentActivity;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.MotionEvent;
@@ -47,13 +51,29 @@ import com.thalmic.myo.Vector3;
 import com.thalmic.myo.XDirection;
 import com.thalmic.myo.scanner.ScanActivity;
 
-public class ArcherActivity extends FragmentActivity implements SensorEventListener,
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ArcherActivity extends FragmentActivity implements SensorEventListener2,
         GoogleApiClient.ConnectionCallbacks,
         GoogleApiClient.OnConnectionFailedListener {
 
     public static final int PLACE_PICKER_REQUEST = 1;
     private static final int REQUEST_RESOLVE_ERROR = 1001;
     private static final int MAX_DISPLAY_FORCE = 233263; // max force to display
+    private static final int FLIGHT_PATH_POINTS = 64; // points of the flight drawn on the result map
+    private static final double FUSED_MIN_CUTOFF = 1.5; // Hz, aim smoothing at rest when fused
+    private static final double AHRS_MIN_CUTOFF = 1.0; // Hz
+    private static final int IDLE_SAMPLING_PERIOD = 66667; // us, sensor rate while waiting
+    private static final int PULL_SAMPLING_PERIOD = 20000; // us, sensor rate while pulling
+    private static final int AHRS_IDLE_SAMPLING_PERIOD = 20000; // us, the AHRS filter needs more
+    private static final int AHRS_PULL_SAMPLING_PERIOD = 5000; // us
+    private static final int IDLE_REPORT_LATENCY = 200000; // us, sensor batching while aiming
+    private static final int NOT_SHOWN = Integer.MIN_VALUE; // widget value not drawn yet
+    private static final long MYO_SAMPLE_PERIOD = 20; // ms, the Myo streams its IMU at 50 Hz
+    private static final long MYO_MAX_GAP = 100; // ms, longer gaps are not interpolated across
+    private static final long MYO_TIMESTAMP_RESOLUTION = 1000000; // ns
+    private static final int AIM_HISTORY_LENGTH = 256; // a few seconds of aim, to look back on
+    private static final int IMU_RING_CAPACITY = 256; // Myo IMU records, five seconds' worth
     public static String LOG_TAG = "ArcherActivity";
     public static String STATE_RESOLVING_KEY = "StateResolvingKey";
     public static String TARGET_LATITUDE_KEY = "TargetLatitudeKey";
@@ -64,6 +84,9 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
     private Marker mTargetMarker;
     private LatLng mTarget;
     private LatLng mSource;
+    private LocalFrame mSourceFrame;
+    private final Flight mFlight = new Flight();
+    private final double[] mFlightPath = new double[3 * FLIGHT_PATH_POINTS];
     private TextView mStateView;
     private TextView mOrientationView;
     private TextView mHeadingView;
@@ -75,16 +98,133 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
     private State mState;
     private GoogleApiClient mGoogleApiClient;
     private SensorManager mSensorManager;
-    private Sensor mAccelerometer, mGeomagnetic;
-    private int sampleSize = 35;
-    private int index = 0;
-    private float[] gravity = new float[3];
-    private float[] geomagnetic = new float[3];
-    private float[] mOrientation = new float[3];
-    private float[] mOrientationAverage = new float[3];
-    private float[][] mOrientations = new float[sampleSize][3];
+    private Sensor[] mOrientationSensors;
+    private int mIdleSamplingPeriod = IDLE_SAMPLING_PERIOD;
+    private int mPullSamplingPeriod = PULL_SAMPLING_PERIOD;
+    private SensorScheduler mSensorScheduler;
+    // sensor and Myo data are processed here, off the UI thread
+    private HandlerThread mSensorThread;
+    private Handler mSensorHandler;
+    // written by the sensor thread, read by the UI once per frame
+    private final AimSnapshot mAimSnapshot = new AimSnapshot();
+    private final AimSnapshot.Frame mAimFrame = new AimSnapshot.Frame();
+    private int mDrawnSequence = -1;
+    // live labels, which skip values they already show
+    private FixedPointLabel mCompassLabel;
+    private FixedPointLabel mAngleLabel;
+    private FixedPointLabel mHeadingLabel;
+    private int mShownStrength = NOT_SHOWN; // percent
+    private LatLng mHeadingSource, mHeadingTarget;
+    // owned by the sensor thread, the aim is the phone fused with the Myo once calibrated
+    private OrientationPipeline mOrientationPipeline;
+    private final float[] mPhoneOrientation = new float[3];
+    private final float[] mSensorOrientation = new float[3];
+    private final AimFusion mAimFusion = new AimFusion();
+    private long mOrientationTimestamp;
+    // puts Myo timestamps on the clock of the phone sensors, taken to be elapsed realtime
+    private final ClockAlignment mMyoClock = new ClockAlignment(
+            ClockAlignment.DEFAULT_BLOCK_DURATION, ClockAlignment.DEFAULT_BLOCKS,
+            MYO_TIMESTAMP_RESOLUTION);
+    // fused aim at each phone sensor event, which takes in the latest Myo orientation too. Myo
+    // readings are not added on their own: their aligned times interleave with the phone's out
+    // of order, and the history keeps only newer entries
+    private final AimHistory mAimHistory = new AimHistory(AIM_HISTORY_LENGTH);
+    // the release, set by the UI before posting mSampleRelease
+    private long mReleaseTime; // ns, on the Myo clock if mReleaseFromMyo
+    private boolean mReleaseFromMyo;
+    private final float[] mReleaseOrientation = new float[3];
+    private final Runnable mSampleRelease = new Runnable() {
+        @Override
+        public void run() {
+            sampleReleaseAim();
+            runOnUiThread(mShowResultMap);
+        }
+    };
+    private final Runnable mShowResultMap = new Runnable() {
+        @Override
+        public void run() {
+            showResultMap();
+        }
+    };
+    private final float[] mOrientationAverage = new float[3];
     private boolean mResolvingError = false;
+    // in ms on the clock of whatever started the pull, the Myo or the touch screen
     private long mStartPullTime, mEndPullTime;
+    // a full draw gives the force of the longest timed pull, so both ways of pulling reach the
+    // same range; owned by the sensor thread, and fed on a uniform grid
+    private final DrawForceEstimator mDrawForce =
+            new DrawForceEstimator(PhysicsEngine.MAX_PULL_FORCE);
+    private final UniformResampler mDrawResampler =
+            new UniformResampler(3, MYO_SAMPLE_PERIOD, MYO_MAX_GAP);
+    private final double[] mDrawSample = new double[3];
+    // Myo IMU readings, assembled into records on the main thread and drained on the sensor thread
+    private final ImuRing mImuRing = new ImuRing(IMU_RING_CAPACITY);
+    private final ImuRing.Record mImuPending = new ImuRing.Record();
+    private final ImuRing.Record mImuRecord = new ImuRing.Record();
+    private final AtomicBoolean mImuDrainPosted = new AtomicBoolean();
+    // watches the Myo for the release on the sensor thread, well before a pose would show it
+    private final ReleaseDetector mReleaseDetector = new ReleaseDetector();
+    private long mDetectedReleaseTime; // ms, on the Myo clock
+    private final Runnable mDetectedRelease = new Runnable() {
+        @Override
+        public void run() {
+            if (mState == State.PULLING) {
+                Log.i(LOG_TAG, "Release detected.");
+                setStateFlying(mDetectedReleaseTime);
+            }
+        }
+    };
+    private final Runnable mDrainImu = new Runnable() {
+        @Override
+        public void run() {
+            // cleared first, so records offered while draining post another drain
+            mImuDrainPosted.set(false);
+            drainImu();
+        }
+    };
+    private final Runnable mResetDraw = new Runnable() {
+        @Override
+        public void run() {
+            mDrawForce.reset();
+            mDrawResampler.reset();
+            mReleaseDetector.reset();
+            mAimSnapshot.publishDraw(0, 0);
+            requestFrame();
+        }
+    };
+    private final Runnable mResetMyo = new Runnable() {
+        @Override
+        public void run() {
+            mAimFusion.resetMyo();
+            mMyoClock.reset();
+        }
+    };
+    // a frame is drawn only when something has changed, rather than on every vsync; set while
+    // one is posted, so any number of changes before it is drawn post it once
+    private final AtomicBoolean mFramePosted = new AtomicBoolean();
+    private boolean mResumed;
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            // cleared first, so a snapshot published while drawing posts another frame
+            mFramePosted.set(false);
+            renderFrame();
+            if (mState == State.PULLING || mState == State.BUTTON_OVERRIDE) {
+                // a timed pull grows with every frame whether or not anything is published
+                requestFrame();
+            }
+        }
+    };
+    private final Runnable mPostFrame = new Runnable() {
+        @Override
+        public void run() {
+            if (mResumed) {
+                Choreographer.getInstance().postFrameCallback(mFrameCallback);
+            } else {
+                mFramePosted.set(false);
+            }
+        }
+    };
     private boolean mTargetSelected = false;
     // Classes that inherit from AbstractDeviceListener can be used to receive events from Myo devices.
     // If you do not override an event, the default behavior is to do nothing.
@@ -104,6 +244,7 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
             // Set the text color of the text view to red when a Myo disconnects.
             Log.d(LOG_TAG, "Myo disconnected.");
             mMyoConnected = false;
+            mSensorHandler.post(mResetMyo);
         }
 
         // onArmSync() is called whenever Myo has recognized a Sync Gesture after someone has put it on their
@@ -112,6 +253,8 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
         public void onArmSync(Myo myo, long timestamp, Arm arm, XDirection xDirection) {
             Log.d(LOG_TAG, getString(myo.getArm() == Arm.LEFT ?
                     R.string.arm_left : R.string.arm_right));
+            // the Myo has a new frame, so calibrate it against the phone again
+            mSensorHandler.post(mResetMyo);
         }
 
         // onArmUnsync() is called whenever Myo has detected that it was moved from a stable position on a person's arm after
@@ -120,6 +263,7 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
         @Override
         public void onArmUnsync(Myo myo, long timestamp) {
             Log.d(LOG_TAG, "Myo unsynced.");
+            mSensorHandler.post(mResetMyo);
         }
 
         // onUnlock() is called whenever a synced Myo has been unlocked. Under the standard locking
@@ -139,6 +283,8 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
         // onPose() is called whenever a Myo provides a new pose.
         @Override
         public void onPose(Myo myo, long timestamp, Pose pose) {
+            // Releases are normally caught by mReleaseDetector first, the poses that end a pull
+            // are there for when it misses one.
             // Handle the cases of the Pose enumeration, and change the text of the text view
             // based on the pose we receive.
             switch (pose) {
@@ -148,37 +294,37 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
                 case REST:
                     Log.i(LOG_TAG, "Rest pose.");
                     if (mState == State.PULLING) {
-                        setStateFlying();
+                        setStateFlying(timestamp);
                     }
                     break;
                 case DOUBLE_TAP:
                     Log.i(LOG_TAG, "Double tap pose.");
                     if (mState == State.PULLING) {
-                        setStateFlying();
+                        setStateFlying(timestamp);
                     }
                     break;
                 case FIST:
                     Log.i(LOG_TAG, "Fist pose.");
                     if (mState == State.WAITING) {
-                        setStatePulling();
+                        setStatePulling(timestamp);
                     }
                     break;
                 case WAVE_IN:
                     Log.i(LOG_TAG, "Wave in.");
                     if (mState == State.PULLING) {
-                        setStateFlying();
+                        setStateFlying(timestamp);
                     }
                     break;
                 case WAVE_OUT:
                     Log.i(LOG_TAG, "Wave out.");
                     if (mState == State.PULLING) {
-                        setStateFlying();
+                        setStateFlying(timestamp);
                     }
                     break;
                 case FINGERS_SPREAD:
                     Log.i(LOG_TAG, "Fingers spread.");
                     if (mState == State.PULLING) {
-                        setStateFlying();
+                        setStateFlying(timestamp);
                     }
                     break;
             }
@@ -202,6 +348,12 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
         // represented as a quaternion.
         @Override
         public void onOrientationData(Myo myo, long timestamp, Quaternion rotation) {
+            ImuRing.Record record = imuRecord(timestamp);
+            record.orientation[0] = rotation.w();
+            record.orientation[1] = rotation.x();
+            record.orientation[2] = rotation.y();
+            record.orientation[3] = rotation.z();
+            record.parts |= ImuRing.ORIENTATION;
             /*
             // Calculate Euler angles (roll, pitch, and yaw) from the quaternion.
             float roll = (float) Math.toDegrees(Quaternion.roll(rotation));
@@ -249,19 +401,115 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
 
         @Override
         public void onAccelerometerData(Myo myo, long timestamp, Vector3 accel) {
-            // update latest timestamp here
             if (mState == State.PULLING) {
-                mEndPullTime = System.currentTimeMillis();
-                updateStrengthBar();
+                // the pull so far, on the same clock as the pose that started it
+                mEndPullTime = timestamp;
             }
+            ImuRing.Record record = imuRecord(timestamp);
+            record.acceleration[0] = accel.x();
+            record.acceleration[1] = accel.y();
+            record.acceleration[2] = accel.z();
+            record.parts |= ImuRing.ACCELERATION;
         }
 
         @Override
         public void onGyroscopeData(Myo myo, long timestamp, Vector3 gyro) {
-            super.onGyroscopeData(myo, timestamp, gyro);
+            ImuRing.Record record = imuRecord(timestamp);
+            record.rotationRate[0] = gyro.x();
+            record.rotationRate[1] = gyro.y();
+            record.rotationRate[2] = gyro.z();
+            record.parts |= ImuRing.ROTATION_RATE;
+            // the gyroscope comes last of the readings of an IMU event
+            offerImuRecord();
         }
     };
 
+    /**
+     * Record the Myo reading at a timestamp goes into, offering the one before it if it was for
+     * an earlier timestamp. Called on the main thread, like the Myo listener.
+     */
+    private ImuRing.Record imuRecord(long timestamp) {
+        if (mImuPending.parts != 0 && mImuPending.timestamp != timestamp) {
+            offerImuRecord();
+        }
+        if (mImuPending.parts == 0) {
+            mImuPending.timestamp = timestamp;
+            mImuPending.received = SystemClock.elapsedRealtimeNanos();
+            mImuPending.pulling = mState == State.PULLING;
+        }
+        return mImuPending;
+    }
+
+    /**
+     * Hands the pending record to the sensor thread, posting a drain unless one is waiting.
+     */
+    private void offerImuRecord() {
+        if (!mImuRing.offer(mImuPending)) {
+            Log.w(LOG_TAG, "Myo readings are not being drained, dropped "
+                    + Integer.toString(mImuRing.getDropped()));
+        }
+        mImuPending.clear();
+        if (mImuDrainPosted.compareAndSet(false, true)) {
+            mSensorHandler.post(mDrainImu);
+        }
+    }
+
+    /**
+     * Draws a frame at the next vsync unless one is already waiting. Called from any thread
+     * whenever something shown has changed.
+     */
+    private void requestFrame() {
+        if (mFramePosted.compareAndSet(false, true)) {
+            // the Choreographer belongs to the thread that asks for it, so post from the UI
+            runOnUiThread(mPostFrame);
+        }
+    }
+
+    /**
+     * Processes every Myo record waiting in the ring, on the sensor thread. The draw is
+     * published once for the whole batch.
+     */
+    private void drainImu() {
+        boolean drawn = false;
+        while (mImuRing.poll(mImuRecord)) {
+            if ((mImuRecord.parts & ImuRing.ORIENTATION) != 0) {
+                long time = mImuRecord.timestamp * 1000000;
+                double[] q = mImuRecord.orientation;
+                mMyoClock.add(time, mImuRecord.received);
+                mDrawForce.setOrientation(q[0], q[1], q[2], q[3]);
+                mAimFusion.setMyoOrientation(q[0], q[1], q[2], q[3]);
+                if (mAimFusion.isCalibrated() && mOrientationTimestamp != 0) {
+                    long aligned = mMyoClock.toLocal(time);
+                    mAimFusion.getOrientation(mSensorOrientation);
+                    mAimSnapshot.publishOrientation(mSensorOrientation, aligned);
+                    requestFrame();
+                }
+            }
+            if ((mImuRecord.parts & ImuRing.ACCELERATION) != 0 && mImuRecord.pulling) {
+                mDrawResampler.add(mImuRecord.timestamp, mImuRecord.acceleration);
+                while (mDrawResampler.next(mDrawSample)) {
+                    mDrawForce.addSample(mDrawResampler.getTimestamp(),
+                            mDrawSample[0], mDrawSample[1], mDrawSample[2]);
+                }
+                drawn = true;
+            }
+            if ((mImuRecord.parts & (ImuRing.ACCELERATION | ImuRing.ROTATION_RATE))
+                    == (ImuRing.ACCELERATION | ImuRing.ROTATION_RATE) && mImuRecord.pulling) {
+                double[] a = mImuRecord.acceleration;
+                double[] g = mImuRecord.rotationRate;
+                if (mReleaseDetector.addSample(mImuRecord.timestamp,
+                        a[0], a[1], a[2], g[0], g[1], g[2])) {
+                    mDetectedReleaseTime = mReleaseDetector.getReleaseTime();
+                    runOnUiThread(mDetectedRelease);
+                }
+            }
+        }
+        if (drawn) {
+            mAimSnapshot.publishDraw(mDrawForce.getForce(), mDrawForce.getSampleCount());
+            requestFrame();
+        }
+    }
+
     @Override
     public void onRestoreInstanceState(@NonNull Bundle savedInstanceState) {
         super.onRestoreInstanceState(savedInstanceState);
@@ -315,7 +563,9 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
         Location mCurrentLocation = LocationServices.FusedLocationApi.getLastLocation(
                 mGoogleApiClient);
         mSource = new LatLng(mCurrentLocation.getLatitude(), mCurrentLocation.getLongitude());
+        mSourceFrame = new LocalFrame(mSource);
         Log.i(LOG_TAG, mSource.toString());
+        requestFrame();
 
         if (!mTargetSelected) {
             openTargetPicker();
@@ -367,38 +617,18 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
         }
     }
 
-    // for phone orientation
+    // for phone orientation, called on the sensor thread
     @Override
     public void onSensorChanged(SensorEvent event) {
-        switch (event.sensor.getType()) {
-            case Sensor.TYPE_ACCELEROMETER:
-                gravity = event.values;
-                break;
-            case Sensor.TYPE_MAGNETIC_FIELD:
-                geomagnetic = event.values;
-                break;
-        }
-        if (gravity != null && geomagnetic != null) {
-            float R[] = new float[9];
-            float I[] = new float[9];
-
-            if (SensorManager.getRotationMatrix(R, I, gravity, geomagnetic)) {
-                mOrientation = new float[3];
-                SensorManager.getOrientation(R, mOrientation);
-                mOrientations[index++] = mOrientation;
-                index %= sampleSize;
-                movingAverage();
-                mOrientationView.setText(String.format("Compass: %.1f", Math.toDegrees(mOrientationAverage[0]) + 180));
-                mAngleView.setText(String.format("Angle: %.1f", 90 + Math.toDegrees(mOrientationAverage[1])));
-            }
-        }
-
-        if (mSource != null && mTarget != null) {
-            double heading = SphericalUtil.computeHeading(mSource, mTarget);
-            if (heading < 0) {
-                heading += 360;
-            }
-            mHeadingView.setText(String.format("Target heading: %.1f", heading));
+        if (mOrientationPipeline.onSensorChanged(event.sensor.getType(), event.values,
+                event.timestamp)) {
+            mOrientationPipeline.getSmoothed(mPhoneOrientation);
+            mAimFusion.setPhoneOrientation(mPhoneOrientation);
+            mAimFusion.getOrientation(mSensorOrientation);
+            mOrientationTimestamp = event.timestamp;
+            mAimSnapshot.publishOrientation(mSensorOrientation, mOrientationTimestamp);
+            mAimHistory.add(mOrientationTimestamp, mSensorOrientation);
+            requestFrame();
         }
     }
 
@@ -408,15 +638,57 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
 
     }
 
-    private void movingAverage() {
-        mOrientationAverage = new float[3];
-        for (float[] foo : mOrientations) {
-            for (int i = 0; i < foo.length; i++) {
-                mOrientationAverage[i] += foo[i];
+    // for phone orientation, called on the sensor thread once a flush has been delivered
+    @Override
+    public void onFlushCompleted(final Sensor sensor) {
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mSensorScheduler.onFlushCompleted(sensor);
             }
+        });
+    }
+
+    /**
+     * Sets the sensor rates for each state. While waiting the sensors run slowly and batch their
+     * readings in hardware, so the phone is woken a few times a second rather than for every
+     * reading. A pull wants the latest aim at a high rate, so it flushes the batch and switches
+     * to unbatched delivery. While the arrow flies the result map is up and nothing is read.
+     */
+    private void scheduleSensors() {
+        mSensorScheduler = new SensorScheduler(mSensorManager, this, mSensorHandler,
+                mOrientationSensors);
+        mSensorScheduler.setRate(State.WAITING, mIdleSamplingPeriod, IDLE_REPORT_LATENCY);
+        mSensorScheduler.setRate(State.PULLING, mPullSamplingPeriod, 0);
+        mSensorScheduler.setRate(State.BUTTON_OVERRIDE, mPullSamplingPeriod, 0);
+        mSensorScheduler.setRate(State.FLYING, SensorScheduler.OFF, 0);
+    }
+
+    /**
+     * Brings the widgets up to date with the latest sensor state, once per frame. Values are
+     * compared as they would be displayed and a widget is only touched if its value changed.
+     * Nothing is allocated.
+     */
+    private void renderFrame() {
+        mAimSnapshot.read(mAimFrame);
+        if (mAimFrame.sequence != mDrawnSequence && mAimFrame.orientationTimestamp != 0) {
+            mDrawnSequence = mAimFrame.sequence;
+            mCompassLabel.set(Math.toDegrees(mAimFrame.yaw) + 180);
+            mAngleLabel.set(90 + Math.toDegrees(mAimFrame.pitch));
+        }
+        if (mSource != null && mTarget != null
+                && (mSource != mHeadingSource || mTarget != mHeadingTarget)) {
+            mHeadingSource = mSource;
+            mHeadingTarget = mTarget;
+            double heading = SphericalUtil.computeHeading(mSource, mTarget);
+            if (heading < 0) {
+                heading += 360;
+            }
+            mHeadingLabel.set(heading);
         }
-        for (int i = 0; i < mOrientationAverage.length; i++) {
-            mOrientationAverage[i] /= sampleSize;
+        if (mState == State.PULLING) {
+            // a timed pull moves with the Myo readings, not the snapshot, so check each frame
+            updateStrengthBar();
         }
     }
 
@@ -428,6 +700,7 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
                 String toastMsg = String.format("Place: %s", place.getName());
                 Toast.makeText(this, toastMsg, Toast.LENGTH_LONG).show();
                 updateMarker();
+                requestFrame();
             }
         }
     }
@@ -437,6 +710,10 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_archer);
 
+        mSensorThread = new HandlerThread("Sensors");
+        mSensorThread.start();
+        mSensorHandler = new Handler(mSensorThread.getLooper());
+
         mStateView = (TextView) findViewById(R.id.state);
         mOrientationView = (TextView) findViewById(R.id.orientation);
         mHeadingView = (TextView) findViewById(R.id.heading);
@@ -444,6 +721,9 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
         mSelectButton = (Button) findViewById(R.id.select_button);
         mOverrideButton = (Button) findViewById(R.id.override_button);
         mAngleView = (TextView) findViewById(R.id.angle);
+        mCompassLabel = new FixedPointLabel(mOrientationView, "Compass: ", 1, "");
+        mAngleLabel = new FixedPointLabel(mAngleView, "Angle: ", 1, "");
+        mHeadingLabel = new FixedPointLabel(mHeadingView, "Target heading: ", 1, "");
 
         mOverrideButton.setOnTouchListener(new View.OnTouchListener() {
             @Override
@@ -452,13 +732,13 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
                     switch (event.getAction()) {
                         case MotionEvent.ACTION_DOWN:
                             if (mState == State.WAITING) {
-                                setStateButtonOverride();
+                                setStateButtonOverride(event.getEventTime());
                                 mOverrideButton.callOnClick();
                             }
                             return false;
                         case MotionEvent.ACTION_UP:
                             if (mState == State.BUTTON_OVERRIDE) {
-                                setStateFlying();
+                                setStateFlying(event.getEventTime());
                             }
                             return false;
                     }
@@ -468,6 +748,7 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
         });
 
         mSource = new LatLng(0, 0);
+        mSourceFrame = new LocalFrame(mSource);
         mTarget = new LatLng(0, 0);
 
         // First, we initialize the Hub singleton with an application identifier.
@@ -488,9 +769,22 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
             onScanActionSelected();
         }
 
+        // build the range table now so the first shot doesn't wait for it
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                RangeTable.getInstance();
+            }
+        }, "RangeTable").start();
+
         mSensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
-        mAccelerometer = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-        mGeomagnetic = mSensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
+        mOrientationPipeline = createOrientationPipeline();
+        int[] types = mOrientationPipeline.getSensorTypes();
+        mOrientationSensors = new Sensor[types.length];
+        for (int i = 0; i < types.length; i++) {
+            mOrientationSensors[i] = mSensorManager.getDefaultSensor(types[i]);
+        }
+        scheduleSensors();
         // Create a GoogleApiClient instance
         mGoogleApiClient = new GoogleApiClient.Builder(this)
                 .addApi(LocationServices.API)
@@ -506,6 +800,38 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
         setStateWaiting();
     }
 
+    /**
+     * Picks the best orientation the phone offers: the hardware-fused rotation vector, then the
+     * game rotation vector kept on north by the compass, then our own AHRS filter on the raw
+     * gyroscope, then the accelerometer and compass alone. Fused orientations are smooth already,
+     * so they are smoothed less at rest.
+     *
+     * @return pipeline for the sensor thread
+     */
+    private OrientationPipeline createOrientationPipeline() {
+        boolean compass = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER) != null
+                && mSensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD) != null;
+        if (mSensorManager.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR) != null) {
+            Log.i(LOG_TAG, "Orientation from the rotation vector");
+            return new OrientationPipeline(new OrientationSource.RotationVector(),
+                    FUSED_MIN_CUTOFF, OrientationPipeline.DEFAULT_BETA);
+        }
+        if (compass && mSensorManager.getDefaultSensor(Sensor.TYPE_GAME_ROTATION_VECTOR) != null) {
+            Log.i(LOG_TAG, "Orientation from the game rotation vector");
+            return new OrientationPipeline(new OrientationSource.GameRotationVector(),
+                    FUSED_MIN_CUTOFF, OrientationPipeline.DEFAULT_BETA);
+        }
+        if (compass && mSensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE) != null) {
+            Log.i(LOG_TAG, "Orientation from the gyroscope, accelerometer and compass");
+            mIdleSamplingPeriod = AHRS_IDLE_SAMPLING_PERIOD;
+            mPullSamplingPeriod = AHRS_PULL_SAMPLING_PERIOD;
+            return new OrientationPipeline(new MadgwickFilter(), AHRS_MIN_CUTOFF,
+                    OrientationPipeline.DEFAULT_BETA);
+        }
+        Log.i(LOG_TAG, "Orientation from the accelerometer and compass");
+        return new OrientationPipeline();
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
@@ -516,19 +842,24 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
             // The Activity is finishing, so shutdown the Hub. This will disconnect from the Myo.
             Hub.getInstance().shutdown();
         }
+        mSensorThread.quitSafely();
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        mSensorManager.unregisterListener(this);
+        mSensorScheduler.pause();
+        mResumed = false;
+        Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+        mFramePosted.set(false);
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        mSensorManager.registerListener(this, mAccelerometer, SensorManager.SENSOR_DELAY_NORMAL);
-        mSensorManager.registerListener(this, mGeomagnetic, SensorManager.SENSOR_DELAY_NORMAL);
+        mSensorScheduler.resume();
+        mResumed = true;
+        requestFrame();
         setUpMapIfNeeded();
         if (mState == State.FLYING) {
             setStateWaiting();
@@ -557,19 +888,60 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
         super.onStop();
     }
 
-    private void setStateButtonOverride() {
+    /**
+     * @param timestamp of the touch that started the pull, in ms of uptime
+     */
+    private void setStateButtonOverride(long timestamp) {
         Log.i(LOG_TAG, "Changing state to button override");
-        mStartPullTime = System.currentTimeMillis();
+        mStartPullTime = mEndPullTime = timestamp;
+        mSensorHandler.post(mResetDraw);
         mState = State.BUTTON_OVERRIDE;
+        mSensorScheduler.setState(mState);
         mStateView.setText(getString(R.string.state_button_override));
+        requestFrame();
     }
 
-    private void setStateFlying() {
+    /**
+     * Starts the flight, which is shown once the aim at the release has been looked up.
+     *
+     * @param timestamp of the release, in ms on the clock of the event that started the pull
+     */
+    private void setStateFlying(long timestamp) {
         Log.i(LOG_TAG, "Changing state to flying.");
-        mEndPullTime = System.currentTimeMillis();
+        mReleaseFromMyo = mState == State.PULLING;
+        if (mReleaseFromMyo) {
+            mReleaseTime = timestamp * 1000000;
+        } else {
+            // touch events are timed in uptime, which stops while the phone sleeps
+            mReleaseTime = timestamp * 1000000 + SystemClock.elapsedRealtimeNanos()
+                    - SystemClock.uptimeMillis() * 1000000;
+        }
+        mEndPullTime = timestamp;
         mState = State.FLYING;
+        mSensorScheduler.setState(mState);
         mStateView.setText(getString(R.string.state_flying));
-        showResultMap();
+        mSensorHandler.post(mSampleRelease);
+    }
+
+    /**
+     * Looks up the aim at the moment of the release, rather than whenever its event got through.
+     * Called on the sensor thread.
+     */
+    private void sampleReleaseAim() {
+        long release = mReleaseTime;
+        if (mReleaseFromMyo) {
+            if (mMyoClock.isAligned()) {
+                release = mMyoClock.toLocal(release);
+                Log.i(LOG_TAG, "Myo release aligned to within "
+                        + Double.toString(mMyoClock.getUncertainty() / 1e6) + " ms");
+            } else {
+                // no Myo readings to align with, the latest aim will have to do
+                release = Long.MAX_VALUE;
+            }
+        }
+        if (!mAimHistory.get(release, mReleaseOrientation)) {
+            System.arraycopy(mSensorOrientation, 0, mReleaseOrientation, 0, 3);
+        }
     }
 
     /**
@@ -603,6 +975,7 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
     private void setStateWaiting() {
         Log.i(LOG_TAG, "Changing state to waiting.");
         mState = State.WAITING;
+        mSensorScheduler.setState(mState);
         mStateView.setText(getString(R.string.state_waiting));
     }
 
@@ -620,20 +993,25 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
         // distance drawn made up = 10
         // orientation made up = [0.8, -1.4, 0.26]
         //double force = timeToForce(mStartPullTime, mEndPullTime);
-        double force = PhysicsEngine.TimeToForce(mStartPullTime, mEndPullTime);
-        movingAverage();
-        LatLng mHitLatLng = PhysicsEngine.arrowFlightLatLng(
-                new LatLng(mSource.latitude, mSource.longitude),
-                force, mOrientationAverage);
+        mAimSnapshot.read(mAimFrame);
+        System.arraycopy(mReleaseOrientation, 0, mOrientationAverage, 0, 3);
+        double force = pullForce();
+        LatLng mHitLatLng = PhysicsEngine.arrowFlightLatLng(mSourceFrame, force,
+                mOrientationAverage, mFlight, mFlightPath);
+        double[] pathLatitudes = new double[mFlight.sampleCount];
+        double[] pathLongitudes = new double[mFlight.sampleCount];
+        mSourceFrame.toLatLng(mFlightPath, mFlight.sampleCount, pathLatitudes, pathLongitudes);
         Log.i(LOG_TAG, "Using force: " + Double.toString(force));
-        Log.i(LOG_TAG, "Using orientation: " + Double.toString(mOrientation[0]) + ", "
-                + Double.toString(mOrientation[1]) + ", "
-                + Double.toString(mOrientation[2]));
+        Log.i(LOG_TAG, "Using orientation: " + Double.toString(mOrientationAverage[0]) + ", "
+                + Double.toString(mOrientationAverage[1]) + ", "
+                + Double.toString(mOrientationAverage[2]));
         Log.i(LOG_TAG, "Sending hit lat: " + Double.toString(mHitLatLng.latitude));
         Log.i(LOG_TAG, "Sending hit long: " + Double.toString(mHitLatLng.longitude));
 
         intent.putExtra(ResultMapActivity.HIT_LATITUDE, mHitLatLng.latitude);
         intent.putExtra(ResultMapActivity.HIT_LONGITUDE, mHitLatLng.longitude);
+        intent.putExtra(ResultMapActivity.PATH_LATITUDES, pathLatitudes);
+        intent.putExtra(ResultMapActivity.PATH_LONGITUDES, pathLongitudes);
         startActivity(intent);
     }
 
@@ -668,19 +1046,39 @@ public class ArcherActivity extends FragmentActivity implements SensorEventListe
 
     }
 
-    private void setStatePulling() {
+    /**
+     * @param timestamp of the Myo pose that started the pull, in ms
+     */
+    private void setStatePulling(long timestamp) {
         Log.i(LOG_TAG, "Changing state to pulling.");
-        mStartPullTime = System.currentTimeMillis();
+        mStartPullTime = mEndPullTime = timestamp;
+        mSensorHandler.post(mResetDraw);
         mState = State.PULLING;
+        mSensorScheduler.setState(mState);
         mStateView.setText(getString(R.string.state_pulling));
+        requestFrame();
+    }
+
+    /**
+     * @return force of the current pull, from the Myo accelerometer when it has seen the pull and
+     * from how long it lasted otherwise; reads the frame last read from the snapshot
+     */
+    private double pullForce() {
+        if (mAimFrame.drawSamples > 0) {
+            return mAimFrame.force;
+        }
+        return PhysicsEngine.TimeToForce(mStartPullTime, mEndPullTime);
     }
 
     private void updateStrengthBar() {
-        double force = PhysicsEngine.TimeToForce(mStartPullTime, mEndPullTime);
+        double force = pullForce();
         int percent = (int) Math.round(
                 Math.min(100, force / MAX_DISPLAY_FORCE * 100)
         );
-        mStrengthBar.setProgress(percent);
+        if (percent != mShownStrength) {
+            mShownStrength = percent;
+            mStrengthBar.setProgress(percent);
+        }
     }
 
     public enum State {
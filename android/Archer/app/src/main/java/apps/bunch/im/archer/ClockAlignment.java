@@ -0,0 +1,215 @@
+package apps.bunch.im.archer;
+
+/**
+ * Online estimate of how a remote clock, such as the Myo's, lines up with a local one, such as
+ * the one SensorEvent timestamps come from. Each reading is stamped by the remote clock and
+ * received at some local time, so local = remote + offset + latency, where the latency is never
+ * negative and varies from reading to reading. The readings that arrived fastest say the most
+ * about the offset, so only the lowest delay pair of each block of readings is kept, and a line
+ * fitted under those gives the offset and how it drifts. The readings the line passes through
+ * still had some latency, so the offset includes the least latency seen.
+ * <p/>
+ * Each reading costs O(1): a line is fitted over at most a fixed count of blocks, and only when
+ * a block closes. Both clocks must be given in ns. Not thread safe.
+ */
+public class ClockAlignment {
+
+    public static final long DEFAULT_BLOCK_DURATION = 2000000000L; // ns
+    public static final int DEFAULT_BLOCKS = 16;
+    // crystal drift is tens of ppm, a steeper slope is noise in the lowest delays
+    private static final double MAX_DRIFT = 200e-6;
+    // share of each reading in the running mean of the delay above the line
+    private static final double EXCESS_WEIGHT = 0.05;
+    // blocks needed before their spread about the line means anything
+    private static final int MIN_FIT_BLOCKS = 3;
+
+    private final long mBlockDuration;
+    private final double mResolution;
+    // lowest delay pair of each closed block, relative to the first pair, in a ring
+    private final double[] mBlockRemote;
+    private final double[] mBlockDelay;
+    private int mBlockCount;
+    private int mNextBlock;
+    // lowest delay pair of the open block
+    private long mBlockStart;
+    private double mMinRemote;
+    private double mMinDelay;
+    private boolean mStarted;
+    private long mOriginRemote;
+    private long mOriginDelay;
+    private long mLastRemote;
+    // the line, delay = mFitDelay + mDrift * (remote - mFitRemote), relative to the first pair
+    private double mFitRemote;
+    private double mFitDelay;
+    private double mDrift;
+    private double mSpread;
+    private double mExcess;
+
+    public ClockAlignment() {
+        this(DEFAULT_BLOCK_DURATION, DEFAULT_BLOCKS, 0);
+    }
+
+    /**
+     * @param blockDuration of remote time over which the lowest delay pair is picked, in ns
+     * @param blocks        lowest delay pairs the line is fitted to
+     * @param resolution    of the remote timestamps, in ns
+     */
+    public ClockAlignment(long blockDuration, int blocks, long resolution) {
+        mBlockDuration = blockDuration;
+        mResolution = resolution;
+        mBlockRemote = new double[blocks];
+        mBlockDelay = new double[blocks];
+    }
+
+    /**
+     * Forgets all readings, for when the remote clock may have been restarted.
+     */
+    public void reset() {
+        mStarted = false;
+        mBlockCount = 0;
+        mNextBlock = 0;
+        mDrift = 0;
+        mSpread = 0;
+        mExcess = 0;
+    }
+
+    /**
+     * @param remote timestamp of the reading on the remote clock, in ns
+     * @param local  time it was received on the local clock, in ns
+     */
+    public void add(long remote, long local) {
+        if (mStarted && remote < mLastRemote) {
+            // the remote clock went back, so it was restarted
+            reset();
+        }
+        mLastRemote = remote;
+        long delay = local - remote;
+        if (!mStarted) {
+            mStarted = true;
+            mOriginRemote = remote;
+            mOriginDelay = delay;
+            mBlockStart = remote;
+            mMinRemote = 0;
+            mMinDelay = 0;
+            fit();
+            return;
+        }
+        double x = remote - mOriginRemote;
+        double d = delay - mOriginDelay;
+        if (remote - mBlockStart >= mBlockDuration) {
+            mBlockRemote[mNextBlock] = mMinRemote;
+            mBlockDelay[mNextBlock] = mMinDelay;
+            mNextBlock = (mNextBlock + 1) % mBlockRemote.length;
+            mBlockCount = Math.min(mBlockCount + 1, mBlockRemote.length);
+            mBlockStart = remote;
+            mMinRemote = x;
+            mMinDelay = d;
+            fit();
+        } else if (d < mMinDelay) {
+            mMinRemote = x;
+            mMinDelay = d;
+            if (mBlockCount == 0 || d < line(x)) {
+                // a faster reading than the line allows, the offset has come down
+                fit();
+            }
+        }
+        mExcess += EXCESS_WEIGHT * (d - line(x) - mExcess);
+    }
+
+    /**
+     * @return true once there has been a reading to align with
+     */
+    public boolean isAligned() {
+        return mStarted;
+    }
+
+    /**
+     * @param remote timestamp on the remote clock, in ns
+     * @return the same instant on the local clock, in ns
+     */
+    public long toLocal(long remote) {
+        return remote + getOffset(remote);
+    }
+
+    /**
+     * @return local minus remote time at the latest reading, in ns
+     */
+    public long getOffset() {
+        return getOffset(mLastRemote);
+    }
+
+    /**
+     * @param remote timestamp on the remote clock, in ns
+     * @return local minus remote time at that instant, in ns
+     */
+    public long getOffset(long remote) {
+        return mOriginDelay + Math.round(line(remote - mOriginRemote));
+    }
+
+    /**
+     * @return how much faster the local clock runs than the remote one, as a fraction
+     */
+    public double getDrift() {
+        return mDrift;
+    }
+
+    /**
+     * Until a few blocks have closed this is the typical latency above the fastest reading, and
+     * after that the spread of the fastest readings about the line, plus half a remote tick.
+     *
+     * @return how far the offset may be off, in ns
+     */
+    public double getUncertainty() {
+        if (mBlockCount < MIN_FIT_BLOCKS) {
+            return Math.max(mExcess, 0) + mResolution / 2;
+        }
+        return mSpread + mResolution / 2;
+    }
+
+    private double line(double x) {
+        return mFitDelay + mDrift * (x - mFitRemote);
+    }
+
+    /**
+     * Fits the line through the closed blocks, or the open one before any has closed, and lowers
+     * it until no block is below it.
+     */
+    private void fit() {
+        if (mBlockCount == 0) {
+            mFitRemote = mMinRemote;
+            mFitDelay = mMinDelay;
+            mDrift = 0;
+            mSpread = 0;
+            return;
+        }
+        double meanRemote = 0, meanDelay = 0;
+        for (int i = 0; i < mBlockCount; i++) {
+            meanRemote += mBlockRemote[i];
+            meanDelay += mBlockDelay[i];
+        }
+        meanRemote /= mBlockCount;
+        meanDelay /= mBlockCount;
+        double sxx = 0, sxd = 0;
+        for (int i = 0; i < mBlockCount; i++) {
+            double dx = mBlockRemote[i] - meanRemote;
+            sxx += dx * dx;
+            sxd += dx * (mBlockDelay[i] - meanDelay);
+        }
+        double drift = sxx > 0 ? sxd / sxx : 0;
+        mDrift = Math.max(-MAX_DRIFT, Math.min(MAX_DRIFT, drift));
+        mFitRemote = meanRemote;
+        mFitDelay = meanDelay;
+        // include the open block too, it may already hold a faster reading
+        double lowest = Math.min(0, mMinDelay - line(mMinRemote));
+        for (int i = 0; i < mBlockCount; i++) {
+            lowest = Math.min(lowest, mBlockDelay[i] - line(mBlockRemote[i]));
+        }
+        mFitDelay += lowest;
+        double squared = 0;
+        for (int i = 0; i < mBlockCount; i++) {
+            double above = mBlockDelay[i] - line(mBlockRemote[i]);
+            squared += above * above;
+        }
+        mSpread = Math.sqrt(squared / mBlockCount);
+    }
+}
@@ -0,0 +1,169 @@
+package apps.bunch.im.archer;
+
+/**
+ * Works out how far the bow was drawn from the accelerometer of the Myo on the drawing arm.
+ * Gravity is taken out of every sample using the latest orientation of the Myo, and what is left
+ * is integrated into the velocity and displacement of the hand since the pull started. Each
+ * sample is O(1) and allocates nothing, and the force is kept up to date so it can be read the
+ * moment the arrow is released.
+ * <p/>
+ * The bow is modelled as a linear spring, so the energy it stores, and with it the force handed
+ * to {@link PhysicsEngine}, grows with the square of the draw. The peak draw is used because the
+ * hand is already moving forward by the time a release is detected. Whenever the acceleration
+ * stays under {@link #STILL_ACCELERATION} for {@link #STILL_DURATION} the hand is taken to be
+ * still and the velocity is zeroed, so sensor bias cannot run the draw off while the archer holds
+ * at full draw. A very slow draw, over more than about two seconds, can pass for still near its
+ * middle and read short.
+ */
+public class DrawForceEstimator {
+
+    public static final double DEFAULT_DRAW_LENGTH = 0.71; // m, a 28 inch draw
+    public static final double STILL_ACCELERATION = 0.02; // g
+    public static final long STILL_DURATION = 300; // ms
+    private static final double STANDARD_GRAVITY = 9.81; // m/s^2 per g reported by the Myo
+    // longer gaps between samples are skipped rather than integrated
+    private static final long MAX_SAMPLE_GAP = 100; // ms
+
+    private final double mFullDrawForce;
+    private final double mFullDrawLength;
+
+    // latest orientation of the Myo, rotating the sensor frame into the world frame
+    private double mW = 1, mX, mY, mZ;
+    private boolean mHasOrientation;
+
+    // gravity in the sensor frame, from the first sample when there is no orientation
+    private double mGravityX, mGravityY, mGravityZ;
+    private double mVelocityX, mVelocityY, mVelocityZ;
+    private double mDisplacementX, mDisplacementY, mDisplacementZ;
+    private double mDrawLength;
+    private double mPeakSpeed;
+    private long mStillTime;
+    private long mLastTimestamp;
+    private int mSampleCount;
+
+    public DrawForceEstimator(double fullDrawForce) {
+        this(fullDrawForce, DEFAULT_DRAW_LENGTH);
+    }
+
+    /**
+     * @param fullDrawForce  force a full draw gives the arrow, in the units of
+     *                       {@link PhysicsEngine#TimeToForce}
+     * @param fullDrawLength how far the hand moves on a full draw, in m
+     */
+    public DrawForceEstimator(double fullDrawForce, double fullDrawLength) {
+        mFullDrawForce = fullDrawForce;
+        mFullDrawLength = fullDrawLength;
+    }
+
+    /**
+     * Starts a new pull. The orientation is kept.
+     */
+    public void reset() {
+        mVelocityX = mVelocityY = mVelocityZ = 0;
+        mDisplacementX = mDisplacementY = mDisplacementZ = 0;
+        mDrawLength = 0;
+        mPeakSpeed = 0;
+        mStillTime = 0;
+        mSampleCount = 0;
+    }
+
+    /**
+     * Orientation of the Myo as a unit quaternion rotating the sensor frame into the world frame.
+     */
+    public void setOrientation(double w, double x, double y, double z) {
+        mW = w;
+        mX = x;
+        mY = y;
+        mZ = z;
+        mHasOrientation = true;
+    }
+
+    /**
+     * @param timestamp of the sample, in ms
+     * @param x         acceleration along the sensor x axis, in g
+     * @param y         acceleration along the sensor y axis, in g
+     * @param z         acceleration along the sensor z axis, in g
+     */
+    public void addSample(long timestamp, double x, double y, double z) {
+        double ax, ay, az;
+        if (mHasOrientation) {
+            // rotate into the world frame, v' = v + 2w (q x v) + 2 q x (q x v), then drop gravity
+            double tx = 2 * (mY * z - mZ * y);
+            double ty = 2 * (mZ * x - mX * z);
+            double tz = 2 * (mX * y - mY * x);
+            ax = x + mW * tx + mY * tz - mZ * ty;
+            ay = y + mW * ty + mZ * tx - mX * tz;
+            az = z + mW * tz + mX * ty - mY * tx - 1;
+        } else {
+            if (mSampleCount == 0) {
+                // the arm is close to still as the pull starts
+                mGravityX = x;
+                mGravityY = y;
+                mGravityZ = z;
+            }
+            ax = x - mGravityX;
+            ay = y - mGravityY;
+            az = z - mGravityZ;
+        }
+
+        long gap = timestamp - mLastTimestamp;
+        mLastTimestamp = timestamp;
+        if (mSampleCount++ == 0 || gap <= 0 || gap > MAX_SAMPLE_GAP) {
+            return;
+        }
+
+        if (ax * ax + ay * ay + az * az < STILL_ACCELERATION * STILL_ACCELERATION) {
+            mStillTime += gap;
+        } else {
+            mStillTime = 0;
+        }
+
+        double dt = gap / 1000.0;
+        if (mStillTime >= STILL_DURATION) {
+            mVelocityX = mVelocityY = mVelocityZ = 0;
+        } else {
+            mVelocityX += ax * STANDARD_GRAVITY * dt;
+            mVelocityY += ay * STANDARD_GRAVITY * dt;
+            mVelocityZ += az * STANDARD_GRAVITY * dt;
+        }
+        mDisplacementX += mVelocityX * dt;
+        mDisplacementY += mVelocityY * dt;
+        mDisplacementZ += mVelocityZ * dt;
+
+        double speed = Math.sqrt(mVelocityX * mVelocityX + mVelocityY * mVelocityY
+                + mVelocityZ * mVelocityZ);
+        double length = Math.sqrt(mDisplacementX * mDisplacementX
+                + mDisplacementY * mDisplacementY + mDisplacementZ * mDisplacementZ);
+        mPeakSpeed = Math.max(mPeakSpeed, speed);
+        mDrawLength = Math.max(mDrawLength, Math.min(length, mFullDrawLength));
+    }
+
+    /**
+     * @return samples since the pull started
+     */
+    public int getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * @return furthest the hand got from where the pull started, in m, at most a full draw
+     */
+    public double getDrawLength() {
+        return mDrawLength;
+    }
+
+    /**
+     * @return fastest the hand moved during the pull, in m/s
+     */
+    public double getPeakSpeed() {
+        return mPeakSpeed;
+    }
+
+    /**
+     * @return force the draw gives the arrow, in the units of {@link PhysicsEngine#TimeToForce}
+     */
+    public double getForce() {
+        double fraction = mDrawLength / mFullDrawLength;
+        return mFullDrawForce * fraction * fraction;
+    }
+}
@@ -0,0 +1,101 @@
+package apps.bunch.im.archer;
+
+import android.widget.TextView;
+
+/**
+ * TextView showing a prefix, a number with a fixed count of decimals and a suffix, for labels
+ * that change every frame. The text is written into a char buffer owned by the label and pushed
+ * with TextView.setText(char[], int, int), so updating allocates nothing, unlike String.format.
+ * The TextView keeps a reference to the buffer, so each label needs its own. A value that shows
+ * the same as the last one is not pushed at all.
+ * <p/>
+ * Must be used from the UI thread.
+ */
+public class FixedPointLabel {
+
+    // a long has at most 19 digits, plus a sign and a point
+    private static final int MAX_NUMBER_LENGTH = 21;
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000};
+
+    private final TextView mView;
+    private final char[] mBuffer;
+    private final int mPrefixLength;
+    private final String mSuffix;
+    private final int mDecimals;
+    private boolean mShown;
+    private long mScaled;
+
+    /**
+     * @param view     to show the label in
+     * @param prefix   text before the number
+     * @param decimals digits after the point, up to 6
+     * @param suffix   text after the number
+     */
+    public FixedPointLabel(TextView view, String prefix, int decimals, String suffix) {
+        if (decimals < 0 || decimals >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("Unsupported decimals " + decimals);
+        }
+        mView = view;
+        mPrefixLength = prefix.length();
+        mSuffix = suffix;
+        mDecimals = decimals;
+        mBuffer = new char[mPrefixLength + MAX_NUMBER_LENGTH + suffix.length()];
+        prefix.getChars(0, mPrefixLength, mBuffer, 0);
+    }
+
+    /**
+     * @param value to show, rounded to the decimals of the label
+     * @return true if the text changed
+     */
+    public boolean set(double value) {
+        return setScaled(Math.round(value * POWERS_OF_TEN[mDecimals]));
+    }
+
+    /**
+     * @param scaled value to show times ten to the decimals of the label
+     * @return true if the text changed
+     */
+    public boolean setScaled(long scaled) {
+        if (mShown && scaled == mScaled) {
+            return false;
+        }
+        mShown = true;
+        mScaled = scaled;
+        int end = format(scaled, mDecimals, mBuffer, mPrefixLength);
+        mSuffix.getChars(0, mSuffix.length(), mBuffer, end);
+        mView.setText(mBuffer, 0, end + mSuffix.length());
+        return true;
+    }
+
+    /**
+     * Writes a fixed-point number, with at least one digit before the point.
+     *
+     * @param scaled   value times ten to the decimals
+     * @param decimals digits after the point
+     * @param out      receives the digits
+     * @param offset   of the first char in out
+     * @return offset just past the last char written
+     */
+    static int format(long scaled, int decimals, char[] out, int offset) {
+        if (scaled < 0) {
+            out[offset++] = '-';
+            // Long.MIN_VALUE has no positive counterpart, the next one will do
+            scaled = scaled == Long.MIN_VALUE ? Long.MAX_VALUE : -scaled;
+        }
+        int digits = 1;
+        for (long rest = scaled / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, decimals + 1);
+        int end = offset + digits + (decimals > 0 ? 1 : 0);
+        int i = end;
+        for (int digit = 0; digit < digits; digit++) {
+            if (digit == decimals && decimals > 0) {
+                out[--i] = '.';
+            }
+            out[--i] = (char) ('0' + scaled % 10);
+            scaled /= 10;
+        }
+        return end;
+    }
+}
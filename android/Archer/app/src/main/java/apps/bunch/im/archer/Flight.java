@@ -0,0 +1,97 @@
+package apps.bunch.im.archer;
+
+/**
+ * Outcome of a simulated arrow flight. Instances are meant to be kept around and handed back to
+ * {@link PhysicsEngine#simulate} for every shot, so evaluating shots allocates nothing.
+ */
+public class Flight {
+
+    public double impactEast; // m east of the launch point
+    public double impactNorth; // m north of the launch point
+    public double impactUp; // m above the launch point
+    public double distance; // m traveled along the shot heading
+    public double time; // s in the air
+    public int steps; // integration steps taken
+    public int rejectedSteps; // adaptive steps retried with a smaller step size
+    public int sampleCount; // (east, north, up) triples written to the sample buffer
+    public int sampleStride; // integration steps between consecutive samples
+
+    // wind for the flight being integrated
+    WindField wind;
+    // scratch space for the integrator so it does not allocate
+    final double[] scratch = new double[3];
+    final double[] state = new double[6];
+    final double[] stage = new double[6];
+    final double[] stages = new double[7 * 6];
+
+    private int mCapacity;
+
+    void reset(int sampleBufferLength) {
+        impactEast = 0;
+        impactNorth = 0;
+        impactUp = 0;
+        distance = 0;
+        time = 0;
+        steps = 0;
+        rejectedSteps = 0;
+        sampleCount = 0;
+        sampleStride = 1;
+        // need room for at least the launch and impact points
+        mCapacity = sampleBufferLength / 3 >= 2 ? sampleBufferLength / 3 : 0;
+    }
+
+    void land(double east, double north, double up, double time, double dirEast,
+              double dirNorth) {
+        impactEast = east;
+        impactNorth = north;
+        impactUp = up;
+        distance = east * dirEast + north * dirNorth;
+        this.time = time;
+    }
+
+    /**
+     * Appends a sample, halving the sample rate in place when the buffer is full so that the
+     * whole flight always fits.
+     */
+    void addSample(double[] samples, float[] floatSamples, double east, double north, double up) {
+        if (mCapacity == 0) {
+            return;
+        }
+        if (sampleCount == mCapacity) {
+            int kept = 0;
+            for (int i = 0; i < sampleCount; i += 2, kept++) {
+                if (samples != null) {
+                    System.arraycopy(samples, 3 * i, samples, 3 * kept, 3);
+                } else {
+                    System.arraycopy(floatSamples, 3 * i, floatSamples, 3 * kept, 3);
+                }
+            }
+            sampleCount = kept;
+            sampleStride *= 2;
+        }
+        int i = 3 * sampleCount++;
+        if (samples != null) {
+            samples[i] = east;
+            samples[i + 1] = north;
+            samples[i + 2] = up;
+        } else {
+            floatSamples[i] = (float) east;
+            floatSamples[i + 1] = (float) north;
+            floatSamples[i + 2] = (float) up;
+        }
+    }
+
+    /**
+     * Appends the impact point as the last sample, replacing the previous one if the buffer is
+     * full.
+     */
+    void addImpact(double[] samples, float[] floatSamples) {
+        if (mCapacity == 0) {
+            return;
+        }
+        if (sampleCount == mCapacity) {
+            sampleCount--;
+        }
+        addSample(samples, floatSamples, impactEast, impactNorth, impactUp);
+    }
+}
@@ -0,0 +1,163 @@
+package apps.bunch.im.archer;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.SphericalUtil;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Monte Carlo estimate of the chance that a shot lands inside the target ring drawn by
+ * {@link ResultMapActivity}. Each trial adds noise to the aim, the pull force and the GPS fix of
+ * the archer, then scores the shot through the {@link RangeTable}. Trials are split across cores
+ * with fork/join; every task gets its own generator split off from a single seed, so the same
+ * seed always gives the same estimate unless the time budget cuts it short.
+ */
+public class HitEstimator {
+
+    public static final int DEFAULT_TRIALS = 4096;
+    public static final double DEFAULT_HEADING_SIGMA = Math.toRadians(2);
+    public static final double DEFAULT_PITCH_SIGMA = Math.toRadians(2);
+    public static final double DEFAULT_FORCE_SIGMA = 0.05; // fraction of the force
+    public static final double DEFAULT_POSITION_SIGMA = 5; // m, per axis
+    private static final int LEAF_TRIALS = 256;
+    private static final int CLOCK_CHECK_INTERVAL = 32;
+
+    // shared with ShotBatch
+    private static ForkJoinPool sPool;
+
+    private final double mHeadingSigma;
+    private final double mPitchSigma;
+    private final double mForceSigma;
+    private final double mPositionSigma;
+    private int mTrials;
+
+    public HitEstimator() {
+        this(DEFAULT_HEADING_SIGMA, DEFAULT_PITCH_SIGMA, DEFAULT_FORCE_SIGMA, DEFAULT_POSITION_SIGMA);
+    }
+
+    /**
+     * @param headingSigma  standard deviation of the heading, in radians
+     * @param pitchSigma    standard deviation of the pitch, in radians
+     * @param forceSigma    standard deviation of the force, as a fraction of it
+     * @param positionSigma standard deviation of the GPS fix along each axis, in m
+     */
+    public HitEstimator(double headingSigma, double pitchSigma, double forceSigma,
+                        double positionSigma) {
+        mHeadingSigma = headingSigma;
+        mPitchSigma = pitchSigma;
+        mForceSigma = forceSigma;
+        mPositionSigma = positionSigma;
+    }
+
+    static synchronized ForkJoinPool pool() {
+        if (sPool == null) {
+            sPool = new ForkJoinPool();
+        }
+        return sPool;
+    }
+
+    /**
+     * @param source      the source location LatLng object
+     * @param target      the target location LatLng object
+     * @param force       the force the arrow would be fired with, in Newtons
+     * @param orientation the orientation of the bow, in radians (y,p,r)
+     * @param trials      number of perturbed shots to fire
+     * @param seed        seed for the noise
+     * @param budget      time allowed, in ns; trials still running when it runs out are dropped
+     * @return the fraction of trials that landed in the ring
+     */
+    public double estimate(LatLng source, LatLng target, double force, float[] orientation,
+                           int trials, long seed, long budget) {
+        double distance = SphericalUtil.computeDistanceBetween(source, target);
+        double bearing = Math.toRadians(SphericalUtil.computeHeading(source, target));
+        double radius = ResultMapActivity.RADIUS_DISTANCE_RATIO * distance;
+
+        Batch batch = new Batch(this, distance * Math.sin(bearing), distance * Math.cos(bearing),
+                radius * radius, force, orientation[0], orientation[1],
+                System.nanoTime() + budget, 0, trials, new SplitMix(seed));
+        pool().invoke(batch);
+
+        mTrials = batch.mTrials;
+        return mTrials == 0 ? 0 : (double) batch.mHits / mTrials;
+    }
+
+    /**
+     * @return how many trials the last estimate got through before its budget ran out
+     */
+    public int getTrials() {
+        return mTrials;
+    }
+
+    private static class Batch extends RecursiveAction {
+
+        private final HitEstimator mEstimator;
+        private final double mTargetEast;
+        private final double mTargetNorth;
+        private final double mRadiusSquared;
+        private final double mForce;
+        private final double mHeading;
+        private final double mPitch;
+        private final long mDeadline;
+        private final int mFrom;
+        private final int mTo;
+        private final SplitMix mRandom;
+        private int mHits;
+        private int mTrials;
+
+        Batch(HitEstimator estimator, double targetEast, double targetNorth, double radiusSquared,
+              double force, double heading, double pitch, long deadline, int from, int to,
+              SplitMix random) {
+            mEstimator = estimator;
+            mTargetEast = targetEast;
+            mTargetNorth = targetNorth;
+            mRadiusSquared = radiusSquared;
+            mForce = force;
+            mHeading = heading;
+            mPitch = pitch;
+            mDeadline = deadline;
+            mFrom = from;
+            mTo = to;
+            mRandom = random;
+        }
+
+        private Batch half(int from, int to) {
+            return new Batch(mEstimator, mTargetEast, mTargetNorth, mRadiusSquared, mForce,
+                    mHeading, mPitch, mDeadline, from, to, mRandom.split());
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom > LEAF_TRIALS) {
+                int mid = (mFrom + mTo) >>> 1;
+                Batch left = half(mFrom, mid);
+                Batch right = half(mid, mTo);
+                invokeAll(left, right);
+                mHits = left.mHits + right.mHits;
+                mTrials = left.mTrials + right.mTrials;
+                return;
+            }
+
+            RangeTable table = RangeTable.getInstance();
+            HitEstimator e = mEstimator;
+            for (int i = mFrom; i < mTo; i++) {
+                if ((i - mFrom) % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() > mDeadline) {
+                    break;
+                }
+                double sourceEast = e.mPositionSigma * mRandom.nextGaussian();
+                double sourceNorth = e.mPositionSigma * mRandom.nextGaussian();
+                double heading = mHeading + e.mHeadingSigma * mRandom.nextGaussian();
+                double pitch = mPitch + e.mPitchSigma * mRandom.nextGaussian();
+                double force = Math.max(0, mForce * (1 + e.mForceSigma * mRandom.nextGaussian()));
+
+                double distance = table.distance(force, PhysicsEngine.arrowAngle(pitch));
+                double missEast = sourceEast + distance * Math.sin(heading) - mTargetEast;
+                double missNorth = sourceNorth + distance * Math.cos(heading) - mTargetNorth;
+                if (missEast * missEast + missNorth * missNorth < mRadiusSquared) {
+                    mHits++;
+                }
+                mTrials++;
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package apps.bunch.im.archer;
+
+/**
+ * Preallocated ring of Myo IMU records, passed from the thread the Myo calls back on to the one
+ * that processes them. Records are copied in and out field by field, so nothing is allocated and
+ * neither side ever blocks or waits for the other: when the ring is full a record is dropped and
+ * counted rather than holding up the producer.
+ * <p/>
+ * There must be one producer thread and one consumer thread. Each side owns its own index and
+ * only reads the other's, which is volatile, so the slots it publishes are fully written before
+ * the other side can see them.
+ */
+public class ImuRing {
+
+    // parts of a record
+    public static final int ORIENTATION = 1;
+    public static final int ACCELERATION = 2;
+    public static final int ROTATION_RATE = 4;
+    private static final int VALUES = 10;
+
+    private final int mMask;
+    private final long[] mTimestamps;
+    private final long[] mReceived;
+    private final int[] mParts;
+    private final boolean[] mPulling;
+    private final double[] mValues;
+    // records published by the producer and taken by the consumer, ever
+    private volatile long mWritten;
+    private volatile long mRead;
+    // last seen value of the other side's index, so it is read only when it has to be
+    private long mReadSeen;
+    private long mWrittenSeen;
+    private int mDropped;
+
+    /**
+     * One IMU reading, filled in by the producer or the consumer.
+     */
+    public static class Record {
+        public long timestamp; // ms, on the Myo clock
+        public long received; // ns of elapsed realtime when it arrived
+        public int parts; // which of the values below were read
+        public boolean pulling; // read during a pull
+        public final double[] orientation = new double[4]; // w, x, y, z
+        public final double[] acceleration = new double[3]; // g
+        public final double[] rotationRate = new double[3]; // degrees per second
+
+        public void clear() {
+            parts = 0;
+        }
+    }
+
+    /**
+     * @param capacity records that can wait, a power of two
+     */
+    public ImuRing(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        mMask = capacity - 1;
+        mTimestamps = new long[capacity];
+        mReceived = new long[capacity];
+        mParts = new int[capacity];
+        mPulling = new boolean[capacity];
+        mValues = new double[VALUES * capacity];
+    }
+
+    /**
+     * Producer only.
+     *
+     * @param record to copy in
+     * @return false if the ring was full and the record was dropped
+     */
+    public boolean offer(Record record) {
+        long written = mWritten;
+        if (written - mReadSeen > mMask) {
+            mReadSeen = mRead;
+            if (written - mReadSeen > mMask) {
+                mDropped++;
+                return false;
+            }
+        }
+        int slot = (int) written & mMask;
+        mTimestamps[slot] = record.timestamp;
+        mReceived[slot] = record.received;
+        mParts[slot] = record.parts;
+        mPulling[slot] = record.pulling;
+        int offset = VALUES * slot;
+        System.arraycopy(record.orientation, 0, mValues, offset, 4);
+        System.arraycopy(record.acceleration, 0, mValues, offset + 4, 3);
+        System.arraycopy(record.rotationRate, 0, mValues, offset + 7, 3);
+        mWritten = written + 1;
+        return true;
+    }
+
+    /**
+     * Producer only.
+     *
+     * @return records dropped because the ring was full
+     */
+    public int getDropped() {
+        return mDropped;
+    }
+
+    /**
+     * Consumer only.
+     *
+     * @param out receives the oldest record waiting
+     * @return false if there was none
+     */
+    public boolean poll(Record out) {
+        long read = mRead;
+        if (read == mWrittenSeen) {
+            mWrittenSeen = mWritten;
+            if (read == mWrittenSeen) {
+                return false;
+            }
+        }
+        int slot = (int) read & mMask;
+        out.timestamp = mTimestamps[slot];
+        out.received = mReceived[slot];
+        out.parts = mParts[slot];
+        out.pulling = mPulling[slot];
+        int offset = VALUES * slot;
+        System.arraycopy(mValues, offset, out.orientation, 0, 4);
+        System.arraycopy(mValues, offset + 4, out.acceleration, 0, 3);
+        System.arraycopy(mValues, offset + 7, out.rotationRate, 0, 3);
+        mRead = read + 1;
+        return true;
+    }
+}
@@ -0,0 +1,109 @@
+package apps.bunch.im.archer;
+
+import com.google.android.gms.maps.model.LatLng;
+
+/**
+ * East-north-up frame anchored at a point on the map, in m. Converting to and from latitude and
+ * longitude is a scale factor per axis worked out once for the anchor, rather than spherical trig
+ * per point. The earth radius matches SphericalUtil, so distances measured on the map agree with
+ * the frame.
+ * <p/>
+ * The scales ignore how a degree of longitude shrinks away from the anchor latitude, so a point
+ * d m out lands about d^2 tan(latitude) / (sqrt(3) EARTH_RADIUS) from where
+ * SphericalUtil.computeOffset puts it. That is a cm or two for a 300 m shot at mid latitudes. The
+ * longest shot in the {@link RangeTable}, about 3.3 km, is off by 1 m at 45 degrees, 1.7 m at 60
+ * and 5.7 m at 80, against a target ring 500 m in radius at that range.
+ */
+public class LocalFrame {
+
+    public static final double EARTH_RADIUS = 6371009; // m, same as SphericalUtil
+    static final double METERS_PER_DEGREE_LAT = Math.toRadians(EARTH_RADIUS);
+
+    private final double mLatitude;
+    private final double mLongitude;
+    private final double mMetersPerDegreeLat;
+    private final double mMetersPerDegreeLon;
+
+    public LocalFrame(LatLng origin) {
+        this(origin.latitude, origin.longitude);
+    }
+
+    /**
+     * @param latitude  of the anchor, in degrees
+     * @param longitude of the anchor, in degrees
+     */
+    public LocalFrame(double latitude, double longitude) {
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mMetersPerDegreeLat = METERS_PER_DEGREE_LAT;
+        mMetersPerDegreeLon = METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(latitude));
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * @param north m north of the anchor
+     * @return latitude in degrees
+     */
+    public double latitude(double north) {
+        return mLatitude + north / mMetersPerDegreeLat;
+    }
+
+    /**
+     * @param east m east of the anchor
+     * @return longitude in degrees, not wrapped to [-180, 180)
+     */
+    public double longitude(double east) {
+        return mLongitude + east / mMetersPerDegreeLon;
+    }
+
+    /**
+     * @param latitude in degrees
+     * @return m north of the anchor
+     */
+    public double north(double latitude) {
+        return (latitude - mLatitude) * mMetersPerDegreeLat;
+    }
+
+    /**
+     * @param longitude in degrees
+     * @return m east of the anchor, taking the short way across the 180th meridian
+     */
+    public double east(double longitude) {
+        double delta = longitude - mLongitude;
+        if (Math.abs(delta) > 180) {
+            delta -= Math.signum(delta) * 360;
+        }
+        return delta * mMetersPerDegreeLon;
+    }
+
+    /**
+     * @param east  m east of the anchor
+     * @param north m north of the anchor
+     * @return the point on the map
+     */
+    public LatLng toLatLng(double east, double north) {
+        return new LatLng(latitude(north), longitude(east));
+    }
+
+    /**
+     * Converts (east, north, up) triples, e.g. a sampled flight, to map coordinates.
+     *
+     * @param points     (east, north, up) triples in m
+     * @param count      number of triples to convert
+     * @param latitudes  receives the latitudes in degrees
+     * @param longitudes receives the longitudes in degrees
+     */
+    public void toLatLng(double[] points, int count, double[] latitudes, double[] longitudes) {
+        for (int i = 0; i < count; i++) {
+            latitudes[i] = latitude(points[3 * i + 1]);
+            longitudes[i] = longitude(points[3 * i]);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package apps.bunch.im.archer;
+
+import android.hardware.Sensor;
+
+/**
+ * Madgwick's gradient descent AHRS filter, fusing the gyroscope, accelerometer and magnetometer
+ * of the phone for devices without a good rotation vector. Each gyroscope reading turns the
+ * orientation by the measured rate, and one gradient descent step towards the orientation that
+ * gravity and the magnetic field give corrects the drift. The magnetometer is left out while it
+ * reads nothing.
+ * <p/>
+ * The orientation is a quaternion kept in primitive fields, from the device to a north, west, up
+ * frame as in Madgwick's report, and is turned into the usual (yaw, pitch, roll) on request.
+ * Nothing is allocated per reading. It starts from the accelerometer and magnetometer, so there
+ * is no settling time.
+ */
+public class MadgwickFilter implements OrientationSource {
+
+    // gradient descent step, about sqrt(3/4) times the gyroscope error in rad/s
+    public static final double DEFAULT_BETA = 0.1;
+    // a longer gap between gyroscope readings starts the filter over
+    private static final double MAX_STEP = 0.1;
+    private static final int[] TYPES = {Sensor.TYPE_GYROSCOPE, Sensor.TYPE_ACCELEROMETER,
+            Sensor.TYPE_MAGNETIC_FIELD};
+
+    private final double mBeta;
+    private final float[] mGravity = new float[3];
+    private final float[] mGeomagnetic = new float[3];
+    private final float[] mRotation = new float[9];
+    private final float[] mOrientation = new float[3];
+    private final float[] mField = new float[3];
+    private boolean mHasGravity;
+    private boolean mHasGeomagnetic;
+    private boolean mStarted;
+    private long mLastTimestamp;
+    private double mQ0 = 1, mQ1, mQ2, mQ3;
+
+    public MadgwickFilter() {
+        this(DEFAULT_BETA);
+    }
+
+    /**
+     * @param beta gradient descent step, larger follows gravity and the compass more closely
+     *             at the cost of more noise
+     */
+    public MadgwickFilter(double beta) {
+        mBeta = beta;
+    }
+
+    @Override
+    public int[] getSensorTypes() {
+        return TYPES;
+    }
+
+    @Override
+    public boolean onSensorChanged(int type, float[] values, long timestamp) {
+        switch (type) {
+            case Sensor.TYPE_ACCELEROMETER:
+                System.arraycopy(values, 0, mGravity, 0, 3);
+                mHasGravity = true;
+                return false;
+            case Sensor.TYPE_MAGNETIC_FIELD:
+                System.arraycopy(values, 0, mGeomagnetic, 0, 3);
+                mHasGeomagnetic = true;
+                return false;
+            case Sensor.TYPE_GYROSCOPE:
+                break;
+            default:
+                return false;
+        }
+        if (!mHasGravity) {
+            return false;
+        }
+        double dt = (timestamp - mLastTimestamp) * 1e-9;
+        mLastTimestamp = timestamp;
+        if (!mStarted || dt <= 0 || dt > MAX_STEP) {
+            mStarted = start();
+            return mStarted;
+        }
+        update(dt, values[0], values[1], values[2], mGravity[0], mGravity[1], mGravity[2],
+                mGeomagnetic[0], mGeomagnetic[1], mGeomagnetic[2]);
+        return true;
+    }
+
+    @Override
+    public void getOrientation(float[] out) {
+        rotationMatrix(mRotation);
+        OrientationPipeline.orientation(mRotation, out);
+    }
+
+    /**
+     * @return heading of the device y axis, clockwise from north in radians, as
+     * {@link PhysicsEngine#arrowFlightLatLng} takes it
+     */
+    public float getYaw() {
+        getOrientation(mOrientation);
+        return mOrientation[0];
+    }
+
+    /**
+     * @return pitch of the device in radians, negative with the top edge up, as
+     * {@link PhysicsEngine#arrowFlightLatLng} takes it
+     */
+    public float getPitch() {
+        getOrientation(mOrientation);
+        return mOrientation[1];
+    }
+
+    /**
+     * Starts the filter over from the next readings.
+     */
+    public void reset() {
+        mStarted = false;
+        mHasGravity = false;
+        mHasGeomagnetic = false;
+    }
+
+    /**
+     * One filter step. A zero magnetometer reading leaves out the compass.
+     *
+     * @param dt time since the last step in seconds
+     * @param gx gyroscope rate about the device x axis in rad/s
+     * @param gy gyroscope rate about the device y axis in rad/s
+     * @param gz gyroscope rate about the device z axis in rad/s
+     * @param ax accelerometer reading along the device x axis, any unit
+     * @param ay accelerometer reading along the device y axis
+     * @param az accelerometer reading along the device z axis
+     * @param mx magnetometer reading along the device x axis, any unit
+     * @param my magnetometer reading along the device y axis
+     * @param mz magnetometer reading along the device z axis
+     */
+    public void update(double dt, double gx, double gy, double gz, double ax, double ay,
+                       double az, double mx, double my, double mz) {
+        double q0 = mQ0, q1 = mQ1, q2 = mQ2, q3 = mQ3;
+
+        // rate of change of the quaternion from the gyroscope
+        double qDot0 = 0.5 * (-q1 * gx - q2 * gy - q3 * gz);
+        double qDot1 = 0.5 * (q0 * gx + q2 * gz - q3 * gy);
+        double qDot2 = 0.5 * (q0 * gy - q1 * gz + q3 * gx);
+        double qDot3 = 0.5 * (q0 * gz + q1 * gy - q2 * gx);
+
+        double a = ax * ax + ay * ay + az * az;
+        if (a > 0) {
+            double recipNorm = 1 / Math.sqrt(a);
+            ax *= recipNorm;
+            ay *= recipNorm;
+            az *= recipNorm;
+
+            double s0, s1, s2, s3;
+            double m = mx * mx + my * my + mz * mz;
+            double q0q0 = q0 * q0, q1q1 = q1 * q1, q2q2 = q2 * q2, q3q3 = q3 * q3;
+            double _2q0 = 2 * q0, _2q1 = 2 * q1, _2q2 = 2 * q2, _2q3 = 2 * q3;
+            if (m > 0) {
+                recipNorm = 1 / Math.sqrt(m);
+                mx *= recipNorm;
+                my *= recipNorm;
+                mz *= recipNorm;
+
+                double _2q0mx = _2q0 * mx, _2q0my = _2q0 * my, _2q0mz = _2q0 * mz;
+                double _2q1mx = _2q1 * mx;
+                double _2q0q2 = _2q0 * q2, _2q2q3 = _2q2 * q3;
+                double q0q1 = q0 * q1, q0q2 = q0 * q2, q0q3 = q0 * q3;
+                double q1q2 = q1 * q2, q1q3 = q1 * q3, q2q3 = q2 * q3;
+
+                // reference direction of the magnetic field in the north, west, up frame
+                double hx = mx * q0q0 - _2q0my * q3 + _2q0mz * q2 + mx * q1q1 + _2q1 * my * q2
+                        + _2q1 * mz * q3 - mx * q2q2 - mx * q3q3;
+                double hy = _2q0mx * q3 + my * q0q0 - _2q0mz * q1 + _2q1mx * q2 - my * q1q1
+                        + my * q2q2 + _2q2 * mz * q3 - my * q3q3;
+                double _2bx = Math.sqrt(hx * hx + hy * hy);
+                double _2bz = -_2q0mx * q2 + _2q0my * q1 + mz * q0q0 + _2q1mx * q3 - mz * q1q1
+                        + _2q2 * my * q3 - mz * q2q2 + mz * q3q3;
+                double _4bx = 2 * _2bx, _4bz = 2 * _2bz;
+
+                // errors of the predicted gravity and field against the readings
+                double fgx = 2 * q1q3 - _2q0q2 - ax;
+                double fgy = 2 * q0q1 + _2q2q3 - ay;
+                double fgz = 1 - 2 * q1q1 - 2 * q2q2 - az;
+                double fbx = _2bx * (0.5 - q2q2 - q3q3) + _2bz * (q1q3 - q0q2) - mx;
+                double fby = _2bx * (q1q2 - q0q3) + _2bz * (q0q1 + q2q3) - my;
+                double fbz = _2bx * (q0q2 + q1q3) + _2bz * (0.5 - q1q1 - q2q2) - mz;
+
+                // gradient of the squared error
+                s0 = -_2q2 * fgx + _2q1 * fgy - _2bz * q2 * fbx + (-_2bx * q3 + _2bz * q1) * fby
+                        + _2bx * q2 * fbz;
+                s1 = _2q3 * fgx + _2q0 * fgy - 4 * q1 * fgz + _2bz * q3 * fbx
+                        + (_2bx * q2 + _2bz * q0) * fby + (_2bx * q3 - _4bz * q1) * fbz;
+                s2 = -_2q0 * fgx + _2q3 * fgy - 4 * q2 * fgz + (-_4bx * q2 - _2bz * q0) * fbx
+                        + (_2bx * q1 + _2bz * q3) * fby + (_2bx * q0 - _4bz * q2) * fbz;
+                s3 = _2q1 * fgx + _2q2 * fgy + (-_4bx * q3 + _2bz * q1) * fbx
+                        + (-_2bx * q0 + _2bz * q2) * fby + _2bx * q1 * fbz;
+            } else {
+                double _4q0 = 4 * q0, _4q1 = 4 * q1, _4q2 = 4 * q2;
+                double _8q1 = 8 * q1, _8q2 = 8 * q2;
+                s0 = _4q0 * q2q2 + _2q2 * ax + _4q0 * q1q1 - _2q1 * ay;
+                s1 = _4q1 * q3q3 - _2q3 * ax + 4 * q0q0 * q1 - _2q0 * ay - _4q1 + _8q1 * q1q1
+                        + _8q1 * q2q2 + _4q1 * az;
+                s2 = 4 * q0q0 * q2 + _2q0 * ax + _4q2 * q3q3 - _2q3 * ay - _4q2 + _8q2 * q1q1
+                        + _8q2 * q2q2 + _4q2 * az;
+                s3 = 4 * q1q1 * q3 - _2q1 * ax + 4 * q2q2 * q3 - _2q2 * ay;
+            }
+
+            double s = s0 * s0 + s1 * s1 + s2 * s2 + s3 * s3;
+            if (s > 0) {
+                recipNorm = mBeta / Math.sqrt(s);
+                qDot0 -= recipNorm * s0;
+                qDot1 -= recipNorm * s1;
+                qDot2 -= recipNorm * s2;
+                qDot3 -= recipNorm * s3;
+            }
+        }
+
+        q0 += qDot0 * dt;
+        q1 += qDot1 * dt;
+        q2 += qDot2 * dt;
+        q3 += qDot3 * dt;
+        double recipNorm = 1 / Math.sqrt(q0 * q0 + q1 * q1 + q2 * q2 + q3 * q3);
+        mQ0 = q0 * recipNorm;
+        mQ1 = q1 * recipNorm;
+        mQ2 = q2 * recipNorm;
+        mQ3 = q3 * recipNorm;
+    }
+
+    /**
+     * Sets the quaternion straight from the latest accelerometer and magnetometer readings, or
+     * from the accelerometer alone facing north if there is no usable magnetometer reading.
+     *
+     * @return false if there is no usable accelerometer reading
+     */
+    private boolean start() {
+        float[] r = mRotation;
+        if (!mHasGeomagnetic || !OrientationPipeline.rotationMatrix(r, mGravity, mGeomagnetic)) {
+            // any field off the gravity axis will do for the heading
+            float gx = mGravity[0], gy = mGravity[1], gz = mGravity[2];
+            float[] field = mField;
+            field[0] = Math.abs(gx) < Math.abs(gy) ? 1 : 0;
+            field[1] = 1 - field[0];
+            field[2] = 0;
+            if (!OrientationPipeline.rotationMatrix(r, mGravity, field)) {
+                return false;
+            }
+        }
+        // rows of the east, north, up matrix to north, west, up
+        double r00 = r[3], r01 = r[4], r02 = r[5];
+        double r10 = -r[0], r11 = -r[1], r12 = -r[2];
+        double r20 = r[6], r21 = r[7], r22 = r[8];
+        double trace = r00 + r11 + r22;
+        double s;
+        if (trace > 0) {
+            s = 2 * Math.sqrt(trace + 1);
+            mQ0 = 0.25 * s;
+            mQ1 = (r21 - r12) / s;
+            mQ2 = (r02 - r20) / s;
+            mQ3 = (r10 - r01) / s;
+        } else if (r00 > r11 && r00 > r22) {
+            s = 2 * Math.sqrt(1 + r00 - r11 - r22);
+            mQ0 = (r21 - r12) / s;
+            mQ1 = 0.25 * s;
+            mQ2 = (r01 + r10) / s;
+            mQ3 = (r02 + r20) / s;
+        } else if (r11 > r22) {
+            s = 2 * Math.sqrt(1 + r11 - r00 - r22);
+            mQ0 = (r02 - r20) / s;
+            mQ1 = (r01 + r10) / s;
+            mQ2 = 0.25 * s;
+            mQ3 = (r12 + r21) / s;
+        } else {
+            s = 2 * Math.sqrt(1 + r22 - r00 - r11);
+            mQ0 = (r10 - r01) / s;
+            mQ1 = (r02 + r20) / s;
+            mQ2 = (r12 + r21) / s;
+            mQ3 = 0.25 * s;
+        }
+        return true;
+    }
+
+    /**
+     * @param r receives the row-major rotation matrix from the device to east, north, up
+     */
+    private void rotationMatrix(float[] r) {
+        double q0 = mQ0, q1 = mQ1, q2 = mQ2, q3 = mQ3;
+        // north, west, up rows
+        double n0 = 1 - 2 * (q2 * q2 + q3 * q3);
+        double n1 = 2 * (q1 * q2 - q0 * q3);
+        double n2 = 2 * (q1 * q3 + q0 * q2);
+        double w0 = 2 * (q1 * q2 + q0 * q3);
+        double w1 = 1 - 2 * (q1 * q1 + q3 * q3);
+        double w2 = 2 * (q2 * q3 - q0 * q1);
+        r[0] = (float) -w0;
+        r[1] = (float) -w1;
+        r[2] = (float) -w2;
+        r[3] = (float) n0;
+        r[4] = (float) n1;
+        r[5] = (float) n2;
+        r[6] = (float) (2 * (q1 * q3 - q0 * q2));
+        r[7] = (float) (2 * (q2 * q3 + q0 * q1));
+        r[8] = (float) (1 - 2 * (q1 * q1 + q2 * q2));
+    }
+}
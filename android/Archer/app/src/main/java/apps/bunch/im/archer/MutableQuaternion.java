@@ -0,0 +1,114 @@
+package apps.bunch.im.archer;
+
+/**
+ * Unit quaternion that is updated in place, for per-sample work where the Myo SDK's Quaternion
+ * and Vector3 would allocate on every operation. Operations write into this quaternion and may
+ * take it as an argument too.
+ */
+public class MutableQuaternion {
+
+    private double mW = 1, mX, mY, mZ;
+
+    public double w() {
+        return mW;
+    }
+
+    public double x() {
+        return mX;
+    }
+
+    public double y() {
+        return mY;
+    }
+
+    public double z() {
+        return mZ;
+    }
+
+    /**
+     * @param w scalar part
+     * @param x first vector part
+     * @param y second vector part
+     * @param z third vector part
+     * @return this
+     */
+    public MutableQuaternion set(double w, double x, double y, double z) {
+        mW = w;
+        mX = x;
+        mY = y;
+        mZ = z;
+        return this;
+    }
+
+    /**
+     * @param q quaternion to copy
+     * @return this
+     */
+    public MutableQuaternion set(MutableQuaternion q) {
+        return set(q.mW, q.mX, q.mY, q.mZ);
+    }
+
+    /**
+     * Sets the rotation from the device to east, north, up for an orientation as
+     * SensorManager.getOrientation reports it.
+     *
+     * @param yaw   in radians
+     * @param pitch in radians
+     * @param roll  in radians
+     * @return this
+     */
+    public MutableQuaternion setOrientation(double yaw, double pitch, double roll) {
+        // about -z by the yaw, then -x by the pitch, then y by the roll
+        double cy = Math.cos(-0.5 * yaw), sy = Math.sin(-0.5 * yaw);
+        double cp = Math.cos(-0.5 * pitch), sp = Math.sin(-0.5 * pitch);
+        double cr = Math.cos(0.5 * roll), sr = Math.sin(0.5 * roll);
+        return set(cy * cp * cr - sy * sp * sr,
+                cy * sp * cr - sy * cp * sr,
+                cy * cp * sr + sy * sp * cr,
+                sy * cp * cr + cy * sp * sr);
+    }
+
+    /**
+     * @param a left factor
+     * @param b right factor, applied first when rotating
+     * @return this, set to the Hamilton product a * b
+     */
+    public MutableQuaternion multiply(MutableQuaternion a, MutableQuaternion b) {
+        double w = a.mW * b.mW - a.mX * b.mX - a.mY * b.mY - a.mZ * b.mZ;
+        double x = a.mW * b.mX + a.mX * b.mW + a.mY * b.mZ - a.mZ * b.mY;
+        double y = a.mW * b.mY - a.mX * b.mZ + a.mY * b.mW + a.mZ * b.mX;
+        double z = a.mW * b.mZ + a.mX * b.mY - a.mY * b.mX + a.mZ * b.mW;
+        return set(w, x, y, z);
+    }
+
+    /**
+     * @return this, set to its inverse rotation
+     */
+    public MutableQuaternion conjugate() {
+        return set(mW, -mX, -mY, -mZ);
+    }
+
+    /**
+     * @return this, scaled back to unit length
+     */
+    public MutableQuaternion normalize() {
+        double norm = Math.sqrt(mW * mW + mX * mX + mY * mY + mZ * mZ);
+        return set(mW / norm, mX / norm, mY / norm, mZ / norm);
+    }
+
+    /**
+     * @param vx  x of the vector to rotate
+     * @param vy  y of the vector to rotate
+     * @param vz  z of the vector to rotate
+     * @param out receives the rotated vector
+     */
+    public void rotate(double vx, double vy, double vz, double[] out) {
+        // t = 2 q x v, v' = v + w t + q x t
+        double tx = 2 * (mY * vz - mZ * vy);
+        double ty = 2 * (mZ * vx - mX * vz);
+        double tz = 2 * (mX * vy - mY * vx);
+        out[0] = vx + mW * tx + mY * tz - mZ * ty;
+        out[1] = vy + mW * ty + mZ * tx - mX * tz;
+        out[2] = vz + mW * tz + mX * ty - mY * tx;
+    }
+}
@@ -0,0 +1,128 @@
+package apps.bunch.im.archer;
+
+/**
+ * Speed-adaptive low-pass filter for one value, after Casiez, Roussel and Vogel's 1 euro filter.
+ * The cutoff frequency grows with how fast the value is changing: at rest it sits at the minimum
+ * cutoff and removes jitter, and during a fast swing it rises so the value follows with little
+ * lag. Each reading costs O(1) and allocates nothing.
+ * <p/>
+ * An angle filter works on the shortest way round, so it does not swing through zero when the
+ * value wraps from pi to -pi, and keeps its output in [-pi, pi].
+ */
+public class OneEuroFilter {
+
+    public static final double DEFAULT_DERIVATIVE_CUTOFF = 1.0; // Hz
+
+    private final boolean mAngle;
+    private double mMinCutoff;
+    private double mBeta;
+    private double mDerivativeCutoff;
+    private boolean mStarted;
+    private long mTimestamp;
+    private double mRaw;
+    private double mValue;
+    private double mDerivative;
+
+    /**
+     * @param minCutoff cutoff frequency at rest in Hz, lower removes more jitter
+     * @param beta      cutoff added per unit per second of speed, higher lags less when moving
+     * @param angle     true if the value is an angle in radians that wraps at pi
+     */
+    public OneEuroFilter(double minCutoff, double beta, boolean angle) {
+        mMinCutoff = minCutoff;
+        mBeta = beta;
+        mDerivativeCutoff = DEFAULT_DERIVATIVE_CUTOFF;
+        mAngle = angle;
+    }
+
+    /**
+     * @param minCutoff cutoff frequency at rest in Hz
+     */
+    public void setMinCutoff(double minCutoff) {
+        mMinCutoff = minCutoff;
+    }
+
+    /**
+     * @param beta cutoff added per unit per second of speed
+     */
+    public void setBeta(double beta) {
+        mBeta = beta;
+    }
+
+    /**
+     * @param derivativeCutoff cutoff frequency in Hz of the speed estimate
+     */
+    public void setDerivativeCutoff(double derivativeCutoff) {
+        mDerivativeCutoff = derivativeCutoff;
+    }
+
+    public void reset() {
+        mStarted = false;
+    }
+
+    /**
+     * @param value     new reading
+     * @param timestamp of the reading in ns
+     * @return filtered value; readings not newer than the last are ignored
+     */
+    public double filter(double value, long timestamp) {
+        if (!mStarted) {
+            mStarted = true;
+            mTimestamp = timestamp;
+            mRaw = mAngle ? wrap(value) : value;
+            mValue = mRaw;
+            mDerivative = 0;
+            return mValue;
+        }
+        double dt = (timestamp - mTimestamp) * 1e-9;
+        if (dt <= 0) {
+            return mValue;
+        }
+        mTimestamp = timestamp;
+        // the speed comes from the readings alone, so it doesn't depend on the sample rate
+        double step = value - mRaw;
+        double change = value - mValue;
+        if (mAngle) {
+            value = wrap(value);
+            step = wrap(step);
+            change = wrap(change);
+        }
+        mRaw = value;
+        mDerivative += alpha(dt, mDerivativeCutoff) * (step / dt - mDerivative);
+        double cutoff = mMinCutoff + mBeta * Math.abs(mDerivative);
+        mValue += alpha(dt, cutoff) * change;
+        if (mAngle) {
+            mValue = wrap(mValue);
+        }
+        return mValue;
+    }
+
+    /**
+     * @return last filtered value, 0 before the first reading
+     */
+    public double getValue() {
+        return mValue;
+    }
+
+    /**
+     * @return filtered speed of the readings in units per second, 0 before the second reading
+     */
+    public double getSpeed() {
+        return mDerivative;
+    }
+
+    /**
+     * @return smoothing factor of an exponential filter with the given cutoff
+     */
+    private static double alpha(double dt, double cutoff) {
+        double tau = 1 / (2 * Math.PI * cutoff);
+        return 1 / (1 + tau / dt);
+    }
+
+    private static double wrap(double angle) {
+        if (angle > Math.PI || angle < -Math.PI) {
+            angle -= 2 * Math.PI * Math.floor((angle + Math.PI) / (2 * Math.PI));
+        }
+        return angle;
+    }
+}
@@ -0,0 +1,182 @@
+package apps.bunch.im.archer;
+
+/**
+ * Turns phone sensor events into a smoothed (yaw, pitch, roll) for aiming. An
+ * {@link OrientationSource} works out the orientation from the events and the pipeline smooths
+ * each angle with a {@link OneEuroFilter}, steady while the phone is held still and quick to
+ * follow a swing. Neither allocates anything per event.
+ * <p/>
+ * The math follows SensorManager.getRotationMatrix, SensorManager.getRotationMatrixFromVector
+ * and SensorManager.getOrientation, in plain Java so the pipeline runs off the device too.
+ */
+public class OrientationPipeline {
+
+    private static final float STANDARD_GRAVITY = 9.80665f;
+    // below this the device is in free fall and gravity gives no direction
+    private static final float FREE_FALL_GRAVITY_SQUARED = 0.01f * STANDARD_GRAVITY
+            * STANDARD_GRAVITY;
+    // below this the device points too close to magnetic north to tell east from west
+    private static final float MIN_HORIZONTAL_FIELD = 0.1f;
+
+    // cutoff at rest for the accelerometer and magnetometer, which are noisy, Hz
+    public static final double DEFAULT_MIN_CUTOFF = 0.3;
+    // cutoff added per rad/s of turning, Hz
+    public static final double DEFAULT_BETA = 1.0;
+
+    private final OrientationSource mSource;
+    private final float[] mOrientation = new float[3];
+    private final OneEuroFilter mYaw;
+    private final OneEuroFilter mPitch;
+    private final OneEuroFilter mRoll;
+
+    /**
+     * Pipeline on the accelerometer and magnetometer.
+     */
+    public OrientationPipeline() {
+        this(new OrientationSource.AccelerometerMagnetometer(), DEFAULT_MIN_CUTOFF, DEFAULT_BETA);
+    }
+
+    /**
+     * @param source    works out orientations from sensor events
+     * @param minCutoff cutoff frequency of the smoothing at rest in Hz, fused sources can take a
+     *                  higher one
+     * @param beta      cutoff added per rad/s of turning in Hz
+     */
+    public OrientationPipeline(OrientationSource source, double minCutoff, double beta) {
+        mSource = source;
+        mYaw = new OneEuroFilter(minCutoff, beta, true);
+        mPitch = new OneEuroFilter(minCutoff, beta, false);
+        mRoll = new OneEuroFilter(minCutoff, beta, true);
+    }
+
+    /**
+     * @return sensor types to register for, must not be modified
+     */
+    public int[] getSensorTypes() {
+        return mSource.getSensorTypes();
+    }
+
+    /**
+     * Hands an event to the source and smooths any new orientation.
+     *
+     * @param type      sensor type of the event
+     * @param values    values of the event, copied as needed
+     * @param timestamp of the event in ns
+     * @return false if the event gave no new orientation
+     */
+    public boolean onSensorChanged(int type, float[] values, long timestamp) {
+        if (!mSource.onSensorChanged(type, values, timestamp)) {
+            return false;
+        }
+        mSource.getOrientation(mOrientation);
+        mYaw.filter(mOrientation[0], timestamp);
+        mPitch.filter(mOrientation[1], timestamp);
+        mRoll.filter(mOrientation[2], timestamp);
+        return true;
+    }
+
+    /**
+     * @param out receives the latest (yaw, pitch, roll) in radians
+     */
+    public void getOrientation(float[] out) {
+        System.arraycopy(mOrientation, 0, out, 0, 3);
+    }
+
+    /**
+     * @param out receives the smoothed (yaw, pitch, roll) in radians, yaw and roll in [-pi, pi]
+     */
+    public void getSmoothed(float[] out) {
+        out[0] = (float) mYaw.getValue();
+        out[1] = (float) mPitch.getValue();
+        out[2] = (float) mRoll.getValue();
+    }
+
+    /**
+     * Same as SensorManager.getRotationMatrix without the inclination matrix.
+     *
+     * @param r           receives the row-major rotation matrix from the device to the world
+     * @param gravity     accelerometer reading
+     * @param geomagnetic magnetometer reading
+     * @return false if the device is in free fall or pointed along the magnetic field
+     */
+    static boolean rotationMatrix(float[] r, float[] gravity, float[] geomagnetic) {
+        float ax = gravity[0], ay = gravity[1], az = gravity[2];
+        if (ax * ax + ay * ay + az * az < FREE_FALL_GRAVITY_SQUARED) {
+            return false;
+        }
+        float ex = geomagnetic[0], ey = geomagnetic[1], ez = geomagnetic[2];
+        float hx = ey * az - ez * ay;
+        float hy = ez * ax - ex * az;
+        float hz = ex * ay - ey * ax;
+        float normH = (float) Math.sqrt(hx * hx + hy * hy + hz * hz);
+        if (normH < MIN_HORIZONTAL_FIELD) {
+            return false;
+        }
+        float invH = 1.0f / normH;
+        hx *= invH;
+        hy *= invH;
+        hz *= invH;
+        float invA = 1.0f / (float) Math.sqrt(ax * ax + ay * ay + az * az);
+        ax *= invA;
+        ay *= invA;
+        az *= invA;
+        r[0] = hx;
+        r[1] = hy;
+        r[2] = hz;
+        r[3] = ay * hz - az * hy;
+        r[4] = az * hx - ax * hz;
+        r[5] = ax * hy - ay * hx;
+        r[6] = ax;
+        r[7] = ay;
+        r[8] = az;
+        return true;
+    }
+
+    /**
+     * Same as SensorManager.getRotationMatrixFromVector.
+     *
+     * @param r      receives the row-major rotation matrix from the device to the world
+     * @param vector rotation vector reading, the sine of half the angle times the unit axis,
+     *               optionally followed by the cosine of half the angle
+     */
+    static void rotationMatrixFromVector(float[] r, float[] vector) {
+        float q1 = vector[0], q2 = vector[1], q3 = vector[2];
+        float q0;
+        if (vector.length >= 4) {
+            q0 = vector[3];
+        } else {
+            q0 = 1 - q1 * q1 - q2 * q2 - q3 * q3;
+            q0 = q0 > 0 ? (float) Math.sqrt(q0) : 0;
+        }
+        float sqQ1 = 2 * q1 * q1;
+        float sqQ2 = 2 * q2 * q2;
+        float sqQ3 = 2 * q3 * q3;
+        float q1q2 = 2 * q1 * q2;
+        float q3q0 = 2 * q3 * q0;
+        float q1q3 = 2 * q1 * q3;
+        float q2q0 = 2 * q2 * q0;
+        float q2q3 = 2 * q2 * q3;
+        float q1q0 = 2 * q1 * q0;
+        r[0] = 1 - sqQ2 - sqQ3;
+        r[1] = q1q2 - q3q0;
+        r[2] = q1q3 + q2q0;
+        r[3] = q1q2 + q3q0;
+        r[4] = 1 - sqQ1 - sqQ3;
+        r[5] = q2q3 - q1q0;
+        r[6] = q1q3 - q2q0;
+        r[7] = q2q3 + q1q0;
+        r[8] = 1 - sqQ1 - sqQ2;
+    }
+
+    /**
+     * Same as SensorManager.getOrientation.
+     *
+     * @param r   row-major rotation matrix from the device to the world
+     * @param out receives (yaw, pitch, roll) in radians
+     */
+    static void orientation(float[] r, float[] out) {
+        out[0] = (float) Math.atan2(r[1], r[4]);
+        out[1] = (float) Math.asin(-r[7]);
+        out[2] = (float) Math.atan2(-r[6], r[8]);
+    }
+}
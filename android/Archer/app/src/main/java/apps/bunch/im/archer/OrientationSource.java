@@ -0,0 +1,178 @@
+package apps.bunch.im.archer;
+
+import android.hardware.Sensor;
+
+/**
+ * Turns raw phone sensor events into (yaw, pitch, roll) in radians, as SensorManager.getOrientation
+ * reports them. Sources copy what they need out of each event, since the framework reuses the
+ * values array, and allocate nothing per event. The math is plain Java so sources run off the
+ * device too.
+ */
+public interface OrientationSource {
+
+    /**
+     * @return sensor types to register for, must not be modified
+     */
+    int[] getSensorTypes();
+
+    /**
+     * @param type      sensor type of the event
+     * @param values    values of the event
+     * @param timestamp of the event in ns
+     * @return true if the event produced a new orientation
+     */
+    boolean onSensorChanged(int type, float[] values, long timestamp);
+
+    /**
+     * @param out receives the latest (yaw, pitch, roll) in radians
+     */
+    void getOrientation(float[] out);
+
+    /**
+     * Orientation fused on the sensor hub from the gyroscope, accelerometer and magnetometer.
+     * Low noise and latency, with yaw from magnetic north.
+     */
+    class RotationVector implements OrientationSource {
+
+        private static final int[] TYPES = {Sensor.TYPE_ROTATION_VECTOR};
+
+        private final float[] mRotation = new float[9];
+        private final float[] mOrientation = new float[3];
+
+        @Override
+        public int[] getSensorTypes() {
+            return TYPES;
+        }
+
+        @Override
+        public boolean onSensorChanged(int type, float[] values, long timestamp) {
+            if (type != Sensor.TYPE_ROTATION_VECTOR) {
+                return false;
+            }
+            OrientationPipeline.rotationMatrixFromVector(mRotation, values);
+            OrientationPipeline.orientation(mRotation, mOrientation);
+            return true;
+        }
+
+        @Override
+        public void getOrientation(float[] out) {
+            System.arraycopy(mOrientation, 0, out, 0, 3);
+        }
+    }
+
+    /**
+     * Orientation fused from the gyroscope and accelerometer only. It is unaffected by magnetic
+     * disturbances, but its yaw starts from an arbitrary reference, so it is pulled towards
+     * magnetic north from the accelerometer and magnetometer a little on every reading. Pitch
+     * and roll come straight from the fused orientation.
+     */
+    class GameRotationVector implements OrientationSource {
+
+        // share of the gap to the magnetic heading closed per magnetometer reading
+        public static final float DEFAULT_HEADING_GAIN = 0.02f;
+        private static final int[] TYPES = {Sensor.TYPE_GAME_ROTATION_VECTOR,
+                Sensor.TYPE_ACCELEROMETER, Sensor.TYPE_MAGNETIC_FIELD};
+
+        private final float mHeadingGain;
+        private final float[] mRotation = new float[9];
+        private final float[] mOrientation = new float[3];
+        private final float[] mMagnetic = new float[3];
+        private final AccelerometerMagnetometer mCompass = new AccelerometerMagnetometer();
+        private boolean mHasOrientation;
+        private boolean mHasOffset;
+        private double mHeadingOffset;
+
+        public GameRotationVector() {
+            this(DEFAULT_HEADING_GAIN);
+        }
+
+        /**
+         * @param headingGain share of the gap to the magnetic heading closed per reading
+         */
+        public GameRotationVector(float headingGain) {
+            mHeadingGain = headingGain;
+        }
+
+        @Override
+        public int[] getSensorTypes() {
+            return TYPES;
+        }
+
+        @Override
+        public boolean onSensorChanged(int type, float[] values, long timestamp) {
+            if (type != Sensor.TYPE_GAME_ROTATION_VECTOR) {
+                // gravity alone says nothing new about the heading, so only a new magnetic
+                // field reading pulls it, whatever the rates of the two sensors
+                if (mCompass.onSensorChanged(type, values, timestamp) && mHasOrientation
+                        && type == Sensor.TYPE_MAGNETIC_FIELD) {
+                    mCompass.getOrientation(mMagnetic);
+                    double error = wrap(mMagnetic[0] - mOrientation[0] - mHeadingOffset);
+                    mHeadingOffset = wrap(mHeadingOffset
+                            + (mHasOffset ? mHeadingGain * error : error));
+                    mHasOffset = true;
+                }
+                return false;
+            }
+            OrientationPipeline.rotationMatrixFromVector(mRotation, values);
+            OrientationPipeline.orientation(mRotation, mOrientation);
+            mHasOrientation = true;
+            return true;
+        }
+
+        @Override
+        public void getOrientation(float[] out) {
+            out[0] = (float) wrap(mOrientation[0] + mHeadingOffset);
+            out[1] = mOrientation[1];
+            out[2] = mOrientation[2];
+        }
+
+        private static double wrap(double angle) {
+            return Math.atan2(Math.sin(angle), Math.cos(angle));
+        }
+    }
+
+    /**
+     * Orientation from gravity and the magnetic field alone, like SensorManager.getRotationMatrix.
+     * Available everywhere but noisy, so it wants more smoothing.
+     */
+    class AccelerometerMagnetometer implements OrientationSource {
+
+        private static final int[] TYPES = {Sensor.TYPE_ACCELEROMETER, Sensor.TYPE_MAGNETIC_FIELD};
+
+        private final float[] mGravity = new float[3];
+        private final float[] mGeomagnetic = new float[3];
+        private final float[] mRotation = new float[9];
+        private final float[] mOrientation = new float[3];
+        private boolean mHasGravity;
+        private boolean mHasGeomagnetic;
+
+        @Override
+        public int[] getSensorTypes() {
+            return TYPES;
+        }
+
+        @Override
+        public boolean onSensorChanged(int type, float[] values, long timestamp) {
+            if (type == Sensor.TYPE_ACCELEROMETER) {
+                System.arraycopy(values, 0, mGravity, 0, 3);
+                mHasGravity = true;
+            } else if (type == Sensor.TYPE_MAGNETIC_FIELD) {
+                System.arraycopy(values, 0, mGeomagnetic, 0, 3);
+                mHasGeomagnetic = true;
+            } else {
+                return false;
+            }
+            if (!mHasGravity || !mHasGeomagnetic
+                    || !OrientationPipeline.rotationMatrix(mRotation, mGravity, mGeomagnetic)) {
+                return false;
+            }
+            OrientationPipeline.orientation(mRotation, mOrientation);
+            return true;
+        }
+
+        @Override
+        public void getOrientation(float[] out) {
+            System.arraycopy(mOrientation, 0, out, 0, 3);
+        }
+    }
+}
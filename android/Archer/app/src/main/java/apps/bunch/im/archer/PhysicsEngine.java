@@ -1,7 +1,5 @@
 package apps.bunch.im.archer;
 
-import android.util.Log;
-
 import com.google.android.gms.maps.model.LatLng;
 import com.google.maps.android.SphericalUtil;
 
@@ -13,16 +11,116 @@ public class PhysicsEngine {
     public static final double mass = .03; //kg
     public static final double gravity = 9.81; //m/s^2
     public static final double MAX_FORCE = 2.5e7;
-    private static final String LOG_TAG = "PhysicsEngine";
+    public static final double AIR_DENSITY = 1.225; //kg/m^3
+    public static final double DRAG_COEFFICIENT = 1.5; //referenced to the shaft cross section
+    public static final double ARROW_AREA = 5.7e-5; //m^2, 8.5mm shaft
+    public static final int MAX_STEPS = 1 << 16; // hard cap on integration steps per flight
+    // logistic curve mapping pull time to force, see TimeToForce
+    private static final double PULL_A = 7e8;
+    private static final double PULL_B = 3e2;
+    private static final double PULL_C = 1e7;
+    private static final double PULL_D = -7e1;
+    public static final double MAX_PULL_FORCE = PULL_A / PULL_B + PULL_D; // reached after a long pull
+    public static final int MAX_SOLVE_ITERATIONS = 48; // per search in the inverse solvers
+    public static final double SOLVE_TOLERANCE = 0.01; // m
+    private static final double GOLDEN_RATIO = (Math.sqrt(5) - 1) / 2;
+    // the arrow runs along the top edge of the phone
+    private static final double[] DEVICE_ARROW_AXIS = {0, 1, 0};
+    // quadratic drag constant k so that drag deceleration = k * |v| * v, in 1/m
+    private static final double DRAG_FACTOR = 0.5 * AIR_DENSITY * DRAG_COEFFICIENT * ARROW_AREA / mass;
+
+    /**
+     * Numerical integration schemes available to {@link #simulate}
+     */
+    public enum Integrator {
+        SEMI_IMPLICIT_EULER, RK4,
+        // adaptive-step Dormand-Prince 5(4)
+        DORMAND_PRINCE
+    }
+
+    // Dormand-Prince 5(4) tableau; the last row is also the 5th order solution (FSAL)
+    private static final double[][] DP_A = {
+            {},
+            {1.0 / 5},
+            {3.0 / 40, 9.0 / 40},
+            {44.0 / 45, -56.0 / 15, 32.0 / 9},
+            {19372.0 / 6561, -25360.0 / 2187, 64448.0 / 6561, -212.0 / 729},
+            {9017.0 / 3168, -355.0 / 33, 46732.0 / 5247, 49.0 / 176, -5103.0 / 18656},
+            {35.0 / 384, 0, 500.0 / 1113, 125.0 / 192, -2187.0 / 6784, 11.0 / 84}
+    };
+    // local errors add up over a flight, so each step gets this fraction of the impact tolerance
+    private static final double STEP_TOLERANCE_DIVISOR = 32;
+    // difference between the 5th and 4th order weights, used as the local error estimate
+    private static final double[] DP_E = {
+            71.0 / 57600, 0, -71.0 / 16695, 71.0 / 1920, -17253.0 / 339200, 22.0 / 525, -1.0 / 40
+    };
 
     /**
      * @param source      the source location LatLng object
      * @param force       the force to fire the arrow with, in Newtons
-     * @param orientation the orientation of the bow, in radians (y,p,r)
+     * @param orientation the orientation of the bow, in radians (y,p,r) as
+     *                    SensorManager.getOrientation reports them; aimed below the horizon the
+     *                    arrow goes into the ground and the destination is the source
      * @return the destination LatLng object
      */
     public static LatLng arrowFlightLatLng(LatLng source, double force, float[] orientation) {
-        return SphericalUtil.computeOffset(source, distanceTraveled(force, orientation), Math.toDegrees(orientation[0]));
+        double distance = distanceTraveled(force, orientation);
+        return new LocalFrame(source).toLatLng(distance * Math.sin(orientation[0]),
+                distance * Math.cos(orientation[0]));
+    }
+
+    /**
+     * Flies the arrow in the local frame of the archer and only converts the impact point to map
+     * coordinates.
+     *
+     * @param frame       local frame anchored at the archer
+     * @param force       the force to fire the arrow with, in Newtons
+     * @param orientation the orientation of the bow, in radians (y,p,r) as
+     *                    SensorManager.getOrientation reports them, so pitch is negative with
+     *                    the top edge raised
+     * @param flight      receives the flight in the local frame
+     * @param samples     receives the sampled path as (east, north, up) triples, may be null
+     * @return the destination LatLng object
+     */
+    public static LatLng arrowFlightLatLng(LocalFrame frame, double force, float[] orientation,
+                                           Flight flight, double[] samples) {
+        double[] d = flight.scratch;
+        launchDirection(orientation[0], -orientation[1], orientation[2], DEVICE_ARROW_AXIS, d);
+        double heading = Math.atan2(d[0], d[1]);
+        double elevation = Math.atan2(d[2], Math.sqrt(d[0] * d[0] + d[1] * d[1]));
+        simulate(force, heading, elevation, Integrator.DORMAND_PRINCE, SOLVE_TOLERANCE, flight,
+                samples);
+        return frame.toLatLng(flight.impactEast, flight.impactNorth);
+    }
+
+    /**
+     * Turns the attitude of the bow into the direction the arrow leaves it. The bow is yawed
+     * clockwise from north, then pitched up, then rolled about its forward axis, so roll only
+     * matters for an arrow that is not along that axis.
+     *
+     * @param yaw   heading of the forward axis, in radians clockwise from north
+     * @param pitch angle of the forward axis above the horizon, in radians, which is the
+     *              getOrientation pitch negated
+     * @param roll  rotation about the forward axis, in radians, positive with the right side down
+     * @param axis  direction of the arrow as (right, forward, up) in the frame of the bow
+     * @param out   receives the (east, north, up) direction of the arrow
+     */
+    public static void launchDirection(double yaw, double pitch, double roll, double[] axis,
+                                       double[] out) {
+        double sinYaw = Math.sin(yaw), cosYaw = Math.cos(yaw);
+        double sinPitch = Math.sin(pitch), cosPitch = Math.cos(pitch);
+        double sinRoll = Math.sin(roll), cosRoll = Math.cos(roll);
+
+        // forward, and level right and up before the roll
+        double fe = sinYaw * cosPitch, fn = cosYaw * cosPitch, fu = sinPitch;
+        double re = cosYaw, rn = -sinYaw;
+        double ue = -sinYaw * sinPitch, un = -cosYaw * sinPitch, uu = cosPitch;
+
+        double right = axis[0] * cosRoll + axis[2] * sinRoll;
+        double up = axis[2] * cosRoll - axis[0] * sinRoll;
+        out[0] = right * re + axis[1] * fe + up * ue;
+        out[1] = right * rn + axis[1] * fn + up * un;
+        out[2] = axis[1] * fu + up * uu;
     }
 
     /**
@@ -32,23 +130,15 @@ public class PhysicsEngine {
      * angle (in radians) are given as inputs in m
      */
     private static double distanceTraveled(double force, float[] orientation) {
+        return RangeTable.getInstance().distance(force, arrowAngle(orientation));
+    }
 
-        double acceleration = acceleration(force);
-        double velocity = velocity(acceleration);
-        double arrowAngle = arrowAngle(orientation);
-        double time = time(velocity, arrowAngle);
-
-        Log.d(LOG_TAG, "Distance accel: " + Double.toString(acceleration));
-        Log.d(LOG_TAG, "Distance vel: " + Double.toString(velocity));
-        Log.d(LOG_TAG, "Distance arrowAngle: " + Double.toString(arrowAngle));
-        Log.d(LOG_TAG, "Distance time: " + Double.toString(time));
-
-        double distance = distance(time, velocity, arrowAngle);
-
-        Log.d(LOG_TAG, "Distance traveled: " + Double.toString(distance));
-
-        return distance;
-
+    /**
+     * @param force force to fire the arrow with, in Newtons
+     * @return speed at which the arrow leaves the bow in m/s
+     */
+    static double launchSpeed(double force) {
+        return velocity(acceleration(force));
     }
 
     /**
@@ -68,40 +158,448 @@ public class PhysicsEngine {
     }
 
     /**
-     * 2Pi logic is to fix negatives
-     *
      * @param angles angles vector that contains azimuth, pitch and roll
-     * @return the pitch, the angle at which the arrow leaves the bow in radians
+     * @return the angle at which the arrow leaves the bow in radians, see
+     * {@link #arrowAngle(double)}
      */
     private static double arrowAngle(float[] angles) {
+        return arrowAngle(angles[1]);
+    }
+
+    /**
+     * @param pitch the pitch of the bow in radians, as SensorManager.getOrientation reports it,
+     *              negative with the top edge raised
+     * @return the angle above the horizon at which the arrow leaves the bow in radians,
+     * negative when aimed into the ground
+     */
+    static double arrowAngle(double pitch) {
+        return -pitch;
+    }
+
+    /**
+     * Integrates the flight of an arrow with quadratic air drag in still air. Positions are in a
+     * local east-north-up frame anchored at the launch point, in m. Nothing is allocated, so this
+     * is safe to call continuously while aiming.
+     *
+     * @param force      force to fire the arrow with, in Newtons
+     * @param heading    heading of the shot, in radians clockwise from north
+     * @param elevation  angle above the horizon at which the arrow leaves the bow, in radians
+     * @param integrator integration scheme to step with
+     * @param resolution time step in s for the fixed-step integrators, or the allowed error of
+     *                   the impact point in m for {@link Integrator#DORMAND_PRINCE}
+     * @param flight     receives the impact point, flight time, step and sample counts
+     * @param samples    receives sampled (east, north, up) triples, may be null
+     * @return true if the arrow came back down to launch height within {@link #MAX_STEPS}
+     */
+    public static boolean simulate(double force, double heading, double elevation,
+                                   Integrator integrator, double resolution, Flight flight,
+                                   double[] samples) {
+        return simulate(force, heading, elevation, null, 0, integrator, resolution, flight,
+                samples, null);
+    }
+
+    /**
+     * Same as {@link #simulate(double, double, double, Integrator, double, Flight, double[])} but
+     * writes the samples into a float buffer, e.g. for handing straight to a renderer.
+     */
+    public static boolean simulate(double force, double heading, double elevation,
+                                   Integrator integrator, double resolution, Flight flight,
+                                   float[] samples) {
+        return simulate(force, heading, elevation, null, 0, integrator, resolution, flight,
+                null, samples);
+    }
+
+    /**
+     * Same as {@link #simulate(double, double, double, Integrator, double, Flight, double[])} but
+     * the arrow flies through wind, which is looked up at every stage of every step.
+     *
+     * @param wind wind around the launch point, in the same local frame as the flight
+     */
+    public static boolean simulate(double force, double heading, double elevation,
+                                   WindField wind, Integrator integrator, double resolution,
+                                   Flight flight, double[] samples) {
+        return simulate(force, heading, elevation, wind, 0, integrator, resolution, flight,
+                samples, null);
+    }
+
+    /**
+     * Same as {@link #simulate(double, double, double, WindField, Integrator, double, Flight,
+     * double[])} but writes the samples into a float buffer.
+     */
+    public static boolean simulate(double force, double heading, double elevation,
+                                   WindField wind, Integrator integrator, double resolution,
+                                   Flight flight, float[] samples) {
+        return simulate(force, heading, elevation, wind, 0, integrator, resolution, flight,
+                null, samples);
+    }
+
+    /**
+     * Same as {@link #simulate(double, double, double, WindField, Integrator, double, Flight,
+     * double[])} but the flight ends when the arrow comes down to the given height instead of
+     * launch height, e.g. to follow it down a slope.
+     *
+     * @param floor height relative to the launch point at which the arrow lands on the way down,
+     *              in m
+     */
+    public static boolean simulate(double force, double heading, double elevation,
+                                   WindField wind, double floor, Integrator integrator,
+                                   double resolution, Flight flight, double[] samples) {
+        return simulate(force, heading, elevation, wind, floor, integrator, resolution, flight,
+                samples, null);
+    }
+
+    private static boolean simulate(double force, double heading, double elevation,
+                                    WindField wind, double floor, Integrator integrator,
+                                    double resolution, Flight flight, double[] samples,
+                                    float[] floatSamples) {
+        flight.reset(samples != null ? samples.length : floatSamples != null ? floatSamples.length : 0);
+        flight.wind = wind;
 
-        if (angles[1] < 0) {
-            return 2 * Math.PI + angles[1];
+        double speed = velocity(acceleration(force));
+        double horizontal = Math.cos(elevation);
+        double dirEast = Math.sin(heading);
+        double dirNorth = Math.cos(heading);
+        double[] y = flight.state;
+        y[0] = 0;
+        y[1] = 0;
+        y[2] = 0;
+        y[3] = speed * horizontal * dirEast;
+        y[4] = speed * horizontal * dirNorth;
+        y[5] = speed * Math.sin(elevation);
+
+        flight.addSample(samples, floatSamples, 0, 0, 0);
+
+        boolean landed;
+        if (integrator == Integrator.DORMAND_PRINCE) {
+            landed = integrateAdaptive(dirEast, dirNorth, floor, resolution, flight, samples,
+                    floatSamples);
         } else {
-            return angles[1];
+            landed = integrateFixed(dirEast, dirNorth, floor, integrator, resolution, flight,
+                    samples, floatSamples);
+        }
+        flight.wind = null;
+        return landed;
+    }
+
+    private static boolean integrateFixed(double dirEast, double dirNorth, double floor,
+                                          Integrator integrator, double dt, Flight flight,
+                                          double[] samples, float[] floatSamples) {
+        double[] y = flight.state;
+        double[] s = flight.stage;
+        double[] k = flight.stages;
+        double t = 0;
+
+        for (int step = 1; step <= MAX_STEPS; step++) {
+            double px = y[0], py = y[1], pz = y[2];
+
+            derivative(flight, y, k, 0);
+            if (integrator == Integrator.RK4) {
+                for (int c = 0; c < 6; c++) {
+                    s[c] = y[c] + 0.5 * dt * k[c];
+                }
+                derivative(flight, s, k, 6);
+                for (int c = 0; c < 6; c++) {
+                    s[c] = y[c] + 0.5 * dt * k[6 + c];
+                }
+                derivative(flight, s, k, 12);
+                for (int c = 0; c < 6; c++) {
+                    s[c] = y[c] + dt * k[12 + c];
+                }
+                derivative(flight, s, k, 18);
+                for (int c = 0; c < 6; c++) {
+                    y[c] += dt / 6 * (k[c] + 2 * k[6 + c] + 2 * k[12 + c] + k[18 + c]);
+                }
+            } else {
+                // semi-implicit: update the velocity first, then move with the new velocity
+                for (int c = 0; c < 3; c++) {
+                    y[3 + c] += dt * k[3 + c];
+                    y[c] += dt * y[3 + c];
+                }
+            }
+            t += dt;
+            flight.steps = step;
+
+            if (y[2] < floor && y[5] <= 0) {
+                if (pz < floor) {
+                    // topped out below the floor
+                    break;
+                }
+                // came down through the floor during this step, interpolate back to the crossing
+                double f = (pz - floor) / (pz - y[2]);
+                flight.land(px + f * (y[0] - px), py + f * (y[1] - py), floor, t - dt + f * dt,
+                        dirEast, dirNorth);
+                flight.addImpact(samples, floatSamples);
+                return true;
+            }
+
+            if (step % flight.sampleStride == 0) {
+                flight.addSample(samples, floatSamples, y[0], y[1], y[2]);
+            }
+        }
+
+        flight.land(y[0], y[1], y[2], t, dirEast, dirNorth);
+        return false;
+    }
+
+    /**
+     * Dormand-Prince 5(4) with step size control. The local error of each step is held under a
+     * fraction of the tolerance, and the step that crosses launch height is shortened until it
+     * spans less than the tolerance horizontally, so the interpolated impact point is within the
+     * tolerance too.
+     * Long shots take about as many steps as short ones because the step grows as drag bleeds
+     * off speed.
+     */
+    private static boolean integrateAdaptive(double dirEast, double dirNorth, double floor,
+                                             double tolerance, Flight flight, double[] samples,
+                                             float[] floatSamples) {
+        double[] y = flight.state;
+        double[] s = flight.stage;
+        double[] k = flight.stages;
+        derivative(flight, y, k, 0);
+
+        double t = 0;
+        // start with the time it takes to cover the tolerance and let the controller grow it
+        double h = tolerance / Math.max(1, Math.sqrt(y[3] * y[3] + y[4] * y[4] + y[5] * y[5]));
+
+        while (flight.steps + flight.rejectedSteps < MAX_STEPS) {
+            for (int stage = 1; stage < DP_A.length; stage++) {
+                double[] row = DP_A[stage];
+                for (int c = 0; c < 6; c++) {
+                    double sum = 0;
+                    for (int j = 0; j < row.length; j++) {
+                        sum += row[j] * k[6 * j + c];
+                    }
+                    s[c] = y[c] + h * sum;
+                }
+                derivative(flight, s, k, 6 * stage);
+            }
+
+            // position error of this step; velocity error counts by how far it carries the arrow
+            // over the same step
+            double error = 0;
+            for (int c = 0; c < 6; c++) {
+                double sum = 0;
+                for (int j = 0; j < DP_E.length; j++) {
+                    sum += DP_E[j] * k[6 * j + c];
+                }
+                error = Math.max(error, Math.abs(h * sum) * (c < 3 ? 1 : h));
+            }
+            error /= tolerance / STEP_TOLERANCE_DIVISOR;
+
+            if (error > 1) {
+                h *= Math.max(0.2, 0.9 * Math.pow(error, -0.2));
+                flight.rejectedSteps++;
+                continue;
+            }
+
+            if (s[2] < floor && s[5] <= 0) {
+                if (y[2] < floor) {
+                    // topped out below the floor
+                    break;
+                }
+                double f = (y[2] - floor) / (y[2] - s[2]);
+                double spanEast = s[0] - y[0];
+                double spanNorth = s[1] - y[1];
+                if (spanEast * spanEast + spanNorth * spanNorth > tolerance * tolerance) {
+                    // retry with a step that should end right at the crossing
+                    h *= Math.max(0.01, f);
+                    flight.rejectedSteps++;
+                    continue;
+                }
+                flight.steps++;
+                flight.land(y[0] + f * spanEast, y[1] + f * spanNorth, floor, t + f * h,
+                        dirEast, dirNorth);
+                flight.addImpact(samples, floatSamples);
+                return true;
+            }
+
+            System.arraycopy(s, 0, y, 0, 6);
+            System.arraycopy(k, 6 * (DP_A.length - 1), k, 0, 6);
+            t += h;
+            flight.steps++;
+            if (flight.steps % flight.sampleStride == 0) {
+                flight.addSample(samples, floatSamples, y[0], y[1], y[2]);
+            }
+            h *= error == 0 ? 5 : Math.min(5, 0.9 * Math.pow(error, -0.2));
+        }
+
+        flight.land(y[0], y[1], y[2], t, dirEast, dirNorth);
+        return false;
+    }
+
+    /**
+     * @param flight flight being integrated, for its wind and scratch space
+     * @param y      state (east, north, up, east velocity, north velocity, up velocity)
+     * @param out    receives the time derivative of the state at offset
+     */
+    private static void derivative(Flight flight, double[] y, double[] out, int offset) {
+        double vx = y[3], vy = y[4], vz = y[5];
+        if (flight.wind != null) {
+            // drag acts on the velocity relative to the air
+            double[] w = flight.scratch;
+            flight.wind.velocity(y[0], y[1], y[2], w);
+            vx -= w[0];
+            vy -= w[1];
+            vz -= w[2];
+        }
+        double drag = DRAG_FACTOR * Math.sqrt(vx * vx + vy * vy + vz * vz);
+        out[offset] = y[3];
+        out[offset + 1] = y[4];
+        out[offset + 2] = y[5];
+        out[offset + 3] = -drag * vx;
+        out[offset + 4] = -drag * vy;
+        out[offset + 5] = -drag * vz - gravity;
+    }
+
+    /**
+     * Finds the elevations that land an arrow fired with a given force at the target, for
+     * aim-assist hints.
+     *
+     * @param source   the source location LatLng object
+     * @param target   the target location LatLng object
+     * @param force    force the arrow will be fired with, in Newtons
+     * @param solution receives the low and high arc elevations and the pull time for the force
+     * @return whether the target is in range
+     */
+    public static boolean solveElevation(LatLng source, LatLng target, double force,
+                                         AimSolution solution) {
+        return solveElevation(SphericalUtil.computeDistanceBetween(source, target), force, solution);
+    }
+
+    /**
+     * Finds the elevations that land an arrow fired with a given force at a given distance. Range
+     * rises with elevation up to the longest shot and falls after it, so the longest shot is
+     * found by golden section search and each side is then bisected. Every search is capped at
+     * {@link #MAX_SOLVE_ITERATIONS} range table lookups.
+     *
+     * @param distance distance to the target, in m
+     * @param force    force the arrow will be fired with, in Newtons
+     * @param solution receives the low and high arc elevations and the pull time for the force
+     * @return whether the target is in range; if not, both elevations give the longest shot
+     */
+    public static boolean solveElevation(double distance, double force, AimSolution solution) {
+        RangeTable table = RangeTable.getInstance();
+        solution.force = force;
+        solution.pullTime = ForceToTime(force);
+        solution.iterations = 0;
+
+        // golden section search for the elevation of the longest shot
+        double low = 0;
+        double high = Math.PI / 2;
+        double a = high - GOLDEN_RATIO * (high - low);
+        double b = low + GOLDEN_RATIO * (high - low);
+        double rangeA = table.distance(force, a);
+        double rangeB = table.distance(force, b);
+        for (int i = 0; i < MAX_SOLVE_ITERATIONS && high - low > 1e-6; i++) {
+            if (rangeA < rangeB) {
+                low = a;
+                a = b;
+                rangeA = rangeB;
+                b = low + GOLDEN_RATIO * (high - low);
+                rangeB = table.distance(force, b);
+            } else {
+                high = b;
+                b = a;
+                rangeB = rangeA;
+                a = high - GOLDEN_RATIO * (high - low);
+                rangeA = table.distance(force, a);
+            }
+            solution.iterations++;
+        }
+        double best = (low + high) / 2;
+
+        if (table.distance(force, best) < distance) {
+            solution.reachable = false;
+            solution.lowElevation = best;
+            solution.highElevation = best;
+            return false;
         }
+        solution.reachable = true;
+        solution.lowElevation = bisectElevation(table, force, distance, 0, best, solution);
+        solution.highElevation = bisectElevation(table, force, distance, Math.PI / 2, best, solution);
+        return true;
     }
 
-    //azimuth, pitch, roll,
-    //this is for angle of launch (shoulder tilt)
+    /**
+     * Bisects between an elevation that falls short and one that reaches the distance.
+     */
+    private static double bisectElevation(RangeTable table, double force, double distance,
+                                          double shortElevation, double longElevation,
+                                          AimSolution solution) {
+        double mid = longElevation;
+        for (int i = 0; i < MAX_SOLVE_ITERATIONS; i++) {
+            mid = (shortElevation + longElevation) / 2;
+            double range = table.distance(force, mid);
+            solution.iterations++;
+            if (Math.abs(range - distance) < SOLVE_TOLERANCE) {
+                break;
+            }
+            if (range < distance) {
+                shortElevation = mid;
+            } else {
+                longElevation = mid;
+            }
+        }
+        return mid;
+    }
 
     /**
-     * @param velocity velocity at which the arrow leaves the bow in m/s
-     * @param radians  angle at which the arrow leaves the bow
-     * @return time that arrow is in the air in s
+     * Finds the force that lands an arrow fired at a given elevation on the target.
+     *
+     * @param source    the source location LatLng object
+     * @param target    the target location LatLng object
+     * @param elevation angle at which the arrow will leave the bow, in radians
+     * @param solution  receives the force and pull time; both elevations are set to the one given
+     * @return whether the target is in range
      */
-    private static double time(double velocity, double radians) {
-        return 2 * (velocity * Math.sin(radians)) / gravity;
+    public static boolean solveForce(LatLng source, LatLng target, double elevation,
+                                     AimSolution solution) {
+        return solveForce(SphericalUtil.computeDistanceBetween(source, target), elevation, solution);
     }
 
     /**
-     * @param time     time arrow is in the air in s
-     * @param velocity velocity that has when leaving the bow in m/s
-     * @param radians  angle at which the arrow leaves the bow in radians
-     * @return distance, the distance an object travels in time at velocity in m
+     * Finds the force that lands an arrow fired at a given elevation at a given distance, by
+     * bisection on launch speed since range only grows with it.
+     *
+     * @param distance  distance to the target, in m
+     * @param elevation angle at which the arrow will leave the bow, in radians
+     * @param solution  receives the force and pull time; both elevations are set to the one given
+     * @return whether the target is in range; if not, the force is the strongest possible pull
      */
-    private static double distance(double time, double velocity, double radians) {
-        return velocity * Math.cos(radians) * time;
+    public static boolean solveForce(double distance, double elevation, AimSolution solution) {
+        RangeTable table = RangeTable.getInstance();
+        solution.lowElevation = elevation;
+        solution.highElevation = elevation;
+        solution.iterations = 1;
+
+        if (table.distance(MAX_PULL_FORCE, elevation) < distance) {
+            solution.reachable = false;
+            solution.force = MAX_PULL_FORCE;
+            solution.pullTime = ForceToTime(MAX_PULL_FORCE);
+            return false;
+        }
+
+        double low = 0;
+        double high = launchSpeed(MAX_PULL_FORCE);
+        double force = MAX_PULL_FORCE;
+        for (int i = 0; i < MAX_SOLVE_ITERATIONS; i++) {
+            double speed = (low + high) / 2;
+            force = speed * speed * mass / 2;
+            double range = table.distance(force, elevation);
+            solution.iterations++;
+            if (Math.abs(range - distance) < SOLVE_TOLERANCE) {
+                break;
+            }
+            if (range < distance) {
+                low = speed;
+            } else {
+                high = speed;
+            }
+        }
+        solution.reachable = true;
+        solution.force = force;
+        solution.pullTime = ForceToTime(force);
+        return true;
     }
 
     /**
@@ -111,14 +609,27 @@ public class PhysicsEngine {
      */
     public static double TimeToForce(long startTime, long endTime) {
         double delta = (double) (endTime - startTime) / 1000;
-        Log.d(LOG_TAG, "Pull time: " + Double.toString(delta));
-        double a = 7e8;
-        double b = 3e2;
-        double c = 1e7;
-        double d = -7e1;
-        double force = a / (b + c * Math.pow(Math.E, -delta)) + d;
-        Log.d(LOG_TAG, "Percent of max force: " + Double.toString(force / MAX_FORCE));
+        double force = PULL_A / (PULL_B + PULL_C * Math.pow(Math.E, -delta)) + PULL_D;
         return force;
     }
 
+    /**
+     * Inverse of {@link #TimeToForce}.
+     *
+     * @param force the relative force, in Newtons
+     * @return how long the bow has to be pulled to reach the force, in ms; {@link Long#MAX_VALUE}
+     * if it can't be reached
+     */
+    public static long ForceToTime(double force) {
+        if (force >= MAX_PULL_FORCE) {
+            return Long.MAX_VALUE;
+        }
+        double ratio = (PULL_A / (force - PULL_D) - PULL_B) / PULL_C;
+        if (ratio >= 1) {
+            // weaker than the force at the very start of a pull
+            return 0;
+        }
+        return Math.round(-Math.log(ratio) * 1000);
+    }
+
 }
@@ -0,0 +1,121 @@
+package apps.bunch.im.archer;
+
+/**
+ * Spots the release of the string from the accelerometer and gyroscope of the Myo on the
+ * drawing arm, within a few samples of it happening, long before a pose could be classified.
+ * <p/>
+ * A release is a sharp transient after a hold at full draw. The detector arms once the arm has
+ * been still for {@link #HOLD_DURATION}. Each sample is then scored by how far its rotation rate
+ * and its acceleration off 1 g go past their thresholds, and the release is confirmed when
+ * {@link #WINDOW} samples in a row reach at least half the threshold in amplitude, a quarter of
+ * it in the squared score, with one of them past it. This window is what tells a release apart
+ * from a single knock on one side and a steadier movement on the other. A burst of motion that
+ * does not turn out to be a release, such as the draw itself, disarms the detector until the
+ * next hold. The release is timed from the first sample of the burst.
+ * <p/>
+ * Each sample is O(1) and allocates nothing. Not thread safe.
+ */
+public class ReleaseDetector {
+
+    public static final double ROTATION_THRESHOLD = 150; // degrees per second
+    public static final double ACCELERATION_THRESHOLD = 0.6; // g off gravity
+    public static final int WINDOW = 3; // samples, 60 ms at the 50 Hz of the Myo
+    public static final long HOLD_DURATION = 200; // ms
+    // the arm counts as still at full draw under these
+    private static final double HOLD_ROTATION = 25; // degrees per second
+    private static final double HOLD_ACCELERATION = 0.08; // g off gravity
+    // score of a sample at half the threshold, a score being the squared fraction of it
+    private static final double BURST_SCORE = 0.25;
+
+    private long mStillSince;
+    private boolean mStill;
+    private boolean mArmed;
+    private int mBurst;
+    private long mBurstStart;
+    private boolean mBurstPeaked;
+    private boolean mReleased;
+    private long mReleaseTime;
+
+    /**
+     * Starts watching a new pull.
+     */
+    public void reset() {
+        mStill = false;
+        mArmed = false;
+        mBurst = 0;
+        mReleased = false;
+    }
+
+    /**
+     * @param timestamp of the sample, in ms
+     * @param ax        acceleration along the sensor x axis, in g
+     * @param ay        acceleration along the sensor y axis, in g
+     * @param az        acceleration along the sensor z axis, in g
+     * @param gx        rotation rate about the sensor x axis, in degrees per second
+     * @param gy        rotation rate about the sensor y axis, in degrees per second
+     * @param gz        rotation rate about the sensor z axis, in degrees per second
+     * @return true for the sample that confirms the release, once per pull
+     */
+    public boolean addSample(long timestamp, double ax, double ay, double az,
+                             double gx, double gy, double gz) {
+        if (mReleased) {
+            return false;
+        }
+        double rotation = Math.sqrt(gx * gx + gy * gy + gz * gz);
+        double acceleration = Math.abs(Math.sqrt(ax * ax + ay * ay + az * az) - 1);
+
+        if (rotation < HOLD_ROTATION && acceleration < HOLD_ACCELERATION) {
+            if (!mStill) {
+                mStill = true;
+                mStillSince = timestamp;
+            }
+            if (timestamp - mStillSince >= HOLD_DURATION) {
+                mArmed = true;
+            }
+        } else {
+            mStill = false;
+        }
+
+        double rotationFraction = rotation / ROTATION_THRESHOLD;
+        double accelerationFraction = acceleration / ACCELERATION_THRESHOLD;
+        double score = rotationFraction * rotationFraction
+                + accelerationFraction * accelerationFraction;
+        if (score < BURST_SCORE) {
+            if (mBurst > 0) {
+                // the burst died down without being a release
+                mBurst = 0;
+                mArmed = false;
+            }
+            return false;
+        }
+        if (mBurst++ == 0) {
+            mBurstStart = timestamp;
+            mBurstPeaked = false;
+        }
+        mBurstPeaked |= score >= 1;
+        if (mBurst >= WINDOW && !mBurstPeaked) {
+            // building up too slowly for a release, like the draw
+            mArmed = false;
+        }
+        if (mBurst != WINDOW || !mBurstPeaked || !mArmed) {
+            return false;
+        }
+        mReleased = true;
+        mReleaseTime = mBurstStart;
+        return true;
+    }
+
+    /**
+     * @return true once a release has been detected in this pull
+     */
+    public boolean isReleased() {
+        return mReleased;
+    }
+
+    /**
+     * @return timestamp of the first sample of the release, in ms
+     */
+    public long getReleaseTime() {
+        return mReleaseTime;
+    }
+}
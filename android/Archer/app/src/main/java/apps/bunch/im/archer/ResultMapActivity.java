@@ -29,6 +29,8 @@ public class ResultMapActivity extends FragmentActivity {
     public static final String SOURCE_LATITUDE = "im.bunch.apps.archer.SOURCE_LATITUDE";
     public static final String HIT_LONGITUDE = "im.bunch.apps.archer.HIT_LONGITUDE";
     public static final String HIT_LATITUDE = "im.bunch.apps.archer.HIT_LATITUDE";
+    public static final String PATH_LONGITUDES = "im.bunch.apps.archer.PATH_LONGITUDES";
+    public static final String PATH_LATITUDES = "im.bunch.apps.archer.PATH_LATITUDES";
 
     public static final double RADIUS_DISTANCE_RATIO = 0.15;
 
@@ -36,9 +38,12 @@ public class ResultMapActivity extends FragmentActivity {
     private LatLng mHit;
     private LatLng mTarget;
     private LatLng mSource;
+    private double[] mPathLatitudes;
+    private double[] mPathLongitudes;
     private Marker mAnimatedMarker;
 
     private TextView mDistance;
+    private FixedPointLabel mDistanceLabel;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -46,11 +51,14 @@ public class ResultMapActivity extends FragmentActivity {
         setContentView(R.layout.activity_result_target);
 
         mDistance = (TextView) findViewById(R.id.distance);
+        mDistanceLabel = new FixedPointLabel(mDistance, "Distance: ", 3, " meters");
 
         Intent intent = getIntent();
         mHit = new LatLng(intent.getDoubleExtra(HIT_LATITUDE, 0.0), intent.getDoubleExtra(HIT_LONGITUDE, 0.0));
         mSource = new LatLng(intent.getDoubleExtra(SOURCE_LATITUDE, 0.0), intent.getDoubleExtra(SOURCE_LONGITUDE, 0.0));
         mTarget = new LatLng(intent.getDoubleExtra(TARGET_LATITUDE, 0.0), intent.getDoubleExtra(TARGET_LONGITUDE, 0.0));
+        mPathLatitudes = intent.getDoubleArrayExtra(PATH_LATITUDES);
+        mPathLongitudes = intent.getDoubleArrayExtra(PATH_LONGITUDES);
 
         setUpMapIfNeeded();
     }
@@ -116,7 +124,7 @@ public class ResultMapActivity extends FragmentActivity {
 
         Log.i(LOG_TAG, "Distance hit->target: " + Double.toString(distance));
 
-        mDistance.setText(String.format("Distance: %.3f meters", distance));
+        mDistanceLabel.set(distance);
 
         if (distance < RADIUS_DISTANCE_RATIO * distanceBetweenSourceTarget()) { //abitrarily high to test
             fill = Color.argb(100, 44, 216, 44);
@@ -146,7 +154,7 @@ public class ResultMapActivity extends FragmentActivity {
 
         mAnimatedMarker = mMap.addMarker(animatedMarkerOptions);
 
-        mMap.addPolyline(new PolylineOptions().add(mSource, mHit)
+        mMap.addPolyline(flightPath()
                         .width(3)
                         .color(Color.RED)
         );
@@ -184,6 +192,20 @@ public class ResultMapActivity extends FragmentActivity {
         });
     }
 
+    /**
+     * @return the sampled flight if the shot came with one, otherwise a straight line to the hit
+     */
+    private PolylineOptions flightPath() {
+        PolylineOptions path = new PolylineOptions();
+        if (mPathLatitudes == null || mPathLongitudes == null || mPathLatitudes.length < 2) {
+            return path.add(mSource, mHit);
+        }
+        for (int i = 0; i < mPathLatitudes.length; i++) {
+            path.add(new LatLng(mPathLatitudes[i], mPathLongitudes[i]));
+        }
+        return path;
+    }
+
     private double distanceFromTarget() {
         return SphericalUtil.computeDistanceBetween(mTarget, mHit); //distanceTo returns meters
     }
@@ -0,0 +1,174 @@
+package apps.bunch.im.archer;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEventListener2;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Registers a set of sensors at rates that follow the state of the shot, fast while pulling and
+ * slow and batched while waiting, or not at all while the arrow is flying. Each sensor has a
+ * sampling period and max report latency per state, and is registered again only when these
+ * actually change.
+ * <p/>
+ * Going from batched to lower latency delivery first flushes the batch, so no readings are lost,
+ * and registers the sensor again once the listener has seen the flush complete.
+ * <p/>
+ * Must be used from one thread, usually the UI thread.
+ */
+public class SensorScheduler {
+
+    public static final String LOG_TAG = "SensorScheduler";
+    // sampling period of a sensor that is not registered in a state
+    public static final int OFF = -1;
+
+    private final SensorManager mSensorManager;
+    private final SensorEventListener2 mListener;
+    private final Handler mHandler;
+    private final Sensor[] mSensors;
+    // per state, per sensor
+    private final int[][] mPeriods;
+    private final int[][] mLatencies;
+    // as registered now, OFF if not
+    private final int[] mPeriod;
+    private final int[] mLatency;
+    private final boolean[] mFlushing;
+    private ArcherActivity.State mState;
+    private boolean mResumed;
+
+    /**
+     * @param sensorManager to register with
+     * @param listener      receives the readings and flush completions
+     * @param handler       the listener is called on, null for the main thread
+     * @param sensors       to schedule, nulls are skipped
+     */
+    public SensorScheduler(SensorManager sensorManager, SensorEventListener2 listener,
+                           Handler handler, Sensor[] sensors) {
+        mSensorManager = sensorManager;
+        mListener = listener;
+        mHandler = handler;
+        mSensors = sensors.clone();
+        int states = ArcherActivity.State.values().length;
+        mPeriods = new int[states][sensors.length];
+        mLatencies = new int[states][sensors.length];
+        for (int[] periods : mPeriods) {
+            Arrays.fill(periods, OFF);
+        }
+        mPeriod = new int[sensors.length];
+        mLatency = new int[sensors.length];
+        mFlushing = new boolean[sensors.length];
+        Arrays.fill(mPeriod, OFF);
+    }
+
+    /**
+     * Sets the rate of every sensor in a state.
+     *
+     * @param state            in which the rate applies
+     * @param samplingPeriod   between readings in us, or OFF to leave the sensors unregistered
+     * @param maxReportLatency how long readings may be batched in us, 0 for none
+     */
+    public void setRate(ArcherActivity.State state, int samplingPeriod, int maxReportLatency) {
+        for (int i = 0; i < mSensors.length; i++) {
+            mPeriods[state.ordinal()][i] = samplingPeriod;
+            mLatencies[state.ordinal()][i] = maxReportLatency;
+        }
+    }
+
+    /**
+     * @param state to schedule the sensors for
+     */
+    public void setState(ArcherActivity.State state) {
+        mState = state;
+        apply();
+    }
+
+    /**
+     * Registers the sensors for the current state.
+     */
+    public void resume() {
+        mResumed = true;
+        apply();
+    }
+
+    /**
+     * Unregisters all sensors until {@link #resume}.
+     */
+    public void pause() {
+        mResumed = false;
+        mSensorManager.unregisterListener(mListener);
+        Arrays.fill(mPeriod, OFF);
+        Arrays.fill(mFlushing, false);
+    }
+
+    /**
+     * To be called, on the thread of the scheduler, for each flush completion the listener sees.
+     *
+     * @param sensor whose flush has completed
+     */
+    public void onFlushCompleted(Sensor sensor) {
+        for (int i = 0; i < mSensors.length; i++) {
+            if (mSensors[i] == sensor && mFlushing[i]) {
+                mFlushing[i] = false;
+                apply(i);
+            }
+        }
+    }
+
+    private void apply() {
+        if (!mResumed || mState == null) {
+            return;
+        }
+        int state = mState.ordinal();
+        boolean flush = false;
+        for (int i = 0; i < mSensors.length; i++) {
+            if (mSensors[i] == null || mFlushing[i]) {
+                continue;
+            }
+            if (mPeriod[i] != OFF && mPeriods[state][i] != OFF && mLatency[i] > 0
+                    && mLatencies[state][i] < mLatency[i]) {
+                // deliver what is batched before registering for lower latency
+                mFlushing[i] = true;
+                flush = true;
+            } else {
+                apply(i);
+            }
+        }
+        if (flush && !mSensorManager.flush(mListener)) {
+            Log.w(LOG_TAG, "Flush failed, registering without it");
+            for (int i = 0; i < mSensors.length; i++) {
+                if (mFlushing[i]) {
+                    mFlushing[i] = false;
+                    apply(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers one sensor for the current state if its rate has changed.
+     */
+    private void apply(int i) {
+        if (!mResumed || mState == null) {
+            return;
+        }
+        int period = mPeriods[mState.ordinal()][i];
+        int latency = mLatencies[mState.ordinal()][i];
+        if (period == mPeriod[i] && (period == OFF || latency == mLatency[i])) {
+            return;
+        }
+        Sensor sensor = mSensors[i];
+        if (mPeriod[i] != OFF) {
+            mSensorManager.unregisterListener(mListener, sensor);
+        }
+        mPeriod[i] = period;
+        mLatency[i] = latency;
+        if (period != OFF && !mSensorManager.registerListener(mListener, sensor, period,
+                latency, mHandler)) {
+            Log.w(LOG_TAG, "Could not register " + sensor.getName());
+            mPeriod[i] = OFF;
+        }
+    }
+}
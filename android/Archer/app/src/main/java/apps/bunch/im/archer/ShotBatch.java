@@ -0,0 +1,119 @@
+package apps.bunch.im.archer;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Scores many recorded shots at once, e.g. to replay a session. Shots come in and results go out
+ * as parallel primitive arrays indexed by shot, so nothing is allocated per shot. Each shot is
+ * scored like {@link PhysicsEngine#arrowFlightLatLng(com.google.android.gms.maps.model.LatLng,
+ * double, float[])}, through the {@link RangeTable}, and the parallel path splits the shots
+ * across cores with fork/join.
+ */
+public class ShotBatch {
+
+    private static final int LEAF_SHOTS = 1024;
+
+    private ShotBatch() {
+    }
+
+    /**
+     * @param force      force each arrow was fired with, in Newtons
+     * @param yaw        heading of each shot, in radians clockwise from north
+     * @param pitch      pitch of the bow for each shot, in radians, negative with the top edge
+     *                   raised as SensorManager.getOrientation reports it
+     * @param sourceLat  latitude of the archer for each shot, in degrees
+     * @param sourceLon  longitude of the archer for each shot, in degrees
+     * @param count      number of shots, every array must be at least this long
+     * @param impactLat  receives the latitude of each impact, in degrees
+     * @param impactLon  receives the longitude of each impact, in degrees
+     * @param distance   receives the distance along the heading of each shot in m, may be null
+     * @param time       receives the flight time of each shot in s, may be null
+     * @param parallel   true to split the shots across cores
+     */
+    public static void evaluate(double[] force, double[] yaw, double[] pitch, double[] sourceLat,
+                                double[] sourceLon, int count, double[] impactLat,
+                                double[] impactLon, double[] distance, double[] time,
+                                boolean parallel) {
+        if (force.length < count || yaw.length < count || pitch.length < count
+                || sourceLat.length < count || sourceLon.length < count
+                || impactLat.length < count || impactLon.length < count
+                || (distance != null && distance.length < count)
+                || (time != null && time.length < count)) {
+            throw new IllegalArgumentException("Arrays are shorter than " + count + " shots");
+        }
+
+        Range range = new Range(force, yaw, pitch, sourceLat, sourceLon, impactLat, impactLon,
+                distance, time, 0, count);
+        if (parallel && count > LEAF_SHOTS) {
+            HitEstimator.pool().invoke(range);
+        } else {
+            range.evaluate();
+        }
+    }
+
+    private static class Range extends RecursiveAction {
+
+        private final double[] mForce;
+        private final double[] mYaw;
+        private final double[] mPitch;
+        private final double[] mSourceLat;
+        private final double[] mSourceLon;
+        private final double[] mImpactLat;
+        private final double[] mImpactLon;
+        private final double[] mDistance;
+        private final double[] mTime;
+        private final int mFrom;
+        private final int mTo;
+
+        Range(double[] force, double[] yaw, double[] pitch, double[] sourceLat,
+              double[] sourceLon, double[] impactLat, double[] impactLon, double[] distance,
+              double[] time, int from, int to) {
+            mForce = force;
+            mYaw = yaw;
+            mPitch = pitch;
+            mSourceLat = sourceLat;
+            mSourceLon = sourceLon;
+            mImpactLat = impactLat;
+            mImpactLon = impactLon;
+            mDistance = distance;
+            mTime = time;
+            mFrom = from;
+            mTo = to;
+        }
+
+        private Range half(int from, int to) {
+            return new Range(mForce, mYaw, mPitch, mSourceLat, mSourceLon, mImpactLat,
+                    mImpactLon, mDistance, mTime, from, to);
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom > LEAF_SHOTS) {
+                int mid = (mFrom + mTo) >>> 1;
+                invokeAll(half(mFrom, mid), half(mid, mTo));
+            } else {
+                evaluate();
+            }
+        }
+
+        void evaluate() {
+            RangeTable table = RangeTable.getInstance();
+            for (int i = mFrom; i < mTo; i++) {
+                double elevation = PhysicsEngine.arrowAngle(mPitch[i]);
+                double distance = table.distance(mForce[i], elevation);
+                double latitude = mSourceLat[i];
+                // same conversion as LocalFrame, without a frame per shot
+                mImpactLat[i] = latitude
+                        + distance * Math.cos(mYaw[i]) / LocalFrame.METERS_PER_DEGREE_LAT;
+                mImpactLon[i] = mSourceLon[i] + distance * Math.sin(mYaw[i])
+                        / (LocalFrame.METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(latitude)));
+                if (mDistance != null) {
+                    mDistance[i] = distance;
+                }
+                if (mTime != null) {
+                    mTime[i] = table.time(mForce[i], elevation);
+                }
+            }
+        }
+    }
+}
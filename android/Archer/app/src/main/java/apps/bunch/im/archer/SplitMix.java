@@ -0,0 +1,77 @@
+package apps.bunch.im.archer;
+
+/**
+ * Splittable pseudo-random generator using the SplitMix64 algorithm, the same one behind
+ * java.util.SplittableRandom, which isn't available before API 24. Each generator is meant to be
+ * used by one thread; {@link #split()} hands an independent stream to another.
+ */
+class SplitMix {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long mSeed;
+    private final long mGamma;
+    private double mSpareGaussian;
+    private boolean mHasSpareGaussian = false;
+
+    SplitMix(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    private SplitMix(long seed, long gamma) {
+        mSeed = seed;
+        mGamma = gamma;
+    }
+
+    /**
+     * @return a new generator whose stream is independent of this one's
+     */
+    SplitMix split() {
+        return new SplitMix(nextLong(), mixGamma(mSeed += mGamma));
+    }
+
+    long nextLong() {
+        return mix64(mSeed += mGamma);
+    }
+
+    /**
+     * @return a uniform value in [0, 1)
+     */
+    double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * @return a standard normal value, by the Marsaglia polar method
+     */
+    double nextGaussian() {
+        if (mHasSpareGaussian) {
+            mHasSpareGaussian = false;
+            return mSpareGaussian;
+        }
+        double u, v, s;
+        do {
+            u = 2 * nextDouble() - 1;
+            v = 2 * nextDouble() - 1;
+            s = u * u + v * v;
+        } while (s >= 1 || s == 0);
+        double scale = Math.sqrt(-2 * Math.log(s) / s);
+        mSpareGaussian = v * scale;
+        mHasSpareGaussian = true;
+        return u * scale;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        // make sure the gamma has enough bit transitions to mix well
+        return Long.bitCount(z ^ (z >>> 1)) < 24 ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
@@ -0,0 +1,268 @@
+package apps.bunch.im.archer;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Ground height from SRTM-style elevation tiles: one file per degree square named like
+ * N37W122.hgt, holding a square grid of big-endian int16 heights in m above sea level, rows
+ * running north to south. Tiles are memory mapped when first touched and the least recently used
+ * ones are dropped past a small limit, so the heap stays flat however far the archer roams.
+ * <p/>
+ * Dropping a tile only lets go of its buffer. Java has no way to unmap a file, so the mapping,
+ * about 25 MB of address space for a 1 arc second tile, is held until the buffer is garbage
+ * collected. The limit bounds the tiles in use, not the mapped memory.
+ * <p/>
+ * {@link #findImpact} ray-marches a sampled flight against the ground, and {@link #simulate}
+ * wraps that around {@link PhysicsEngine#simulate} to fly shots over hills.
+ */
+public class Terrain {
+
+    public static final int DEFAULT_MAX_TILES = 4;
+    // horizontal span of a coarse march step, about one cell of a 1 arc second tile
+    public static final double COARSE_STEP = 30; // m
+    // how far below the launch point a flight is followed looking for the ground
+    public static final double MAX_DROP = 1000; // m
+    private static final double IMPACT_TOLERANCE = 0.05; // m
+    private static final int MAX_BISECTIONS = 32;
+    private static final short VOID = Short.MIN_VALUE;
+    private static final String LOG_TAG = "Terrain";
+
+    private final File mDirectory;
+    // evicted tiles stay mapped until they are collected
+    private final Map<Integer, ShortBuffer> mTiles;
+    // tiles that are not on disk, so they are not looked for again
+    private final ShortBuffer mMissing = ShortBuffer.allocate(0);
+    // the last tile used, since consecutive lookups nearly always land in the same one
+    private int mLastKey = -1;
+    private ShortBuffer mLastTile;
+
+    public Terrain(File directory) {
+        this(directory, DEFAULT_MAX_TILES);
+    }
+
+    public Terrain(File directory, final int maxTiles) {
+        mDirectory = directory;
+        mTiles = new LinkedHashMap<Integer, ShortBuffer>(maxTiles + 1, 1, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ShortBuffer> eldest) {
+                return size() > maxTiles;
+            }
+        };
+    }
+
+    /**
+     * @param latitude  in degrees
+     * @param longitude in degrees
+     * @return ground height in m above sea level, or NaN where there is no data
+     */
+    public double height(double latitude, double longitude) {
+        double latFloor = Math.floor(latitude);
+        double lonFloor = Math.floor(longitude);
+        ShortBuffer tile = tile((int) latFloor, (int) lonFloor);
+        if (tile == null) {
+            return Double.NaN;
+        }
+
+        int size = (int) Math.sqrt(tile.capacity());
+        double row = (latFloor + 1 - latitude) * (size - 1);
+        double col = (longitude - lonFloor) * (size - 1);
+        int r = Math.min((int) row, size - 2);
+        int c = Math.min((int) col, size - 2);
+        double fr = row - r;
+        double fc = col - c;
+
+        int k = r * size + c;
+        short h00 = tile.get(k);
+        short h01 = tile.get(k + 1);
+        short h10 = tile.get(k + size);
+        short h11 = tile.get(k + size + 1);
+        if (h00 == VOID || h01 == VOID || h10 == VOID || h11 == VOID) {
+            return Double.NaN;
+        }
+        double top = h00 + fc * (h01 - h00);
+        double bottom = h10 + fc * (h11 - h10);
+        return top + fr * (bottom - top);
+    }
+
+    /**
+     * Flies a shot over the terrain, following it below launch height as far as
+     * {@link #MAX_DROP}. The impact fields of the flight are moved to where the arrow meets the
+     * ground and the samples end there. Flight time is exact when the arrow comes down onto the
+     * ground, and estimated from the horizontal distance covered when it runs into a slope on
+     * the way up.
+     *
+     * @param frame          local frame anchored at the launch point
+     * @param launchAltitude of the launch point, in m above sea level
+     * @param tolerance      allowed error of the flight in m, see {@link PhysicsEngine#simulate}
+     * @param samples        scratch for the flight path, the more room the finer the search
+     * @param impact         receives the (east, north, up) point where the arrow meets the ground
+     * @return true if the arrow met the ground
+     */
+    public boolean simulate(LocalFrame frame, double launchAltitude,
+                            double force, double heading, double elevation, WindField wind,
+                            double tolerance, Flight flight, double[] samples,
+                            double[] impact) {
+        PhysicsEngine.simulate(force, heading, elevation, wind, -MAX_DROP,
+                PhysicsEngine.Integrator.DORMAND_PRINCE, tolerance, flight, samples);
+        double reach = Math.hypot(flight.impactEast, flight.impactNorth);
+        int segment = findImpact(frame, launchAltitude, samples, flight.sampleCount, impact);
+        if (segment < 0) {
+            return false;
+        }
+
+        if (segment > 0 && samples[3 * segment + 2] < samples[3 * segment - 1]) {
+            // came down onto the ground, fly it again to land exactly at that height; the
+            // crossing found between sparse samples can be metres short of the curved path
+            PhysicsEngine.simulate(force, heading, elevation, wind, impact[2],
+                    PhysicsEngine.Integrator.DORMAND_PRINCE, tolerance, flight, samples);
+            impact[0] = flight.impactEast;
+            impact[1] = flight.impactNorth;
+            impact[2] = flight.impactUp;
+        } else {
+            double time = reach > 0 ? flight.time * Math.hypot(impact[0], impact[1]) / reach : 0;
+            flight.land(impact[0], impact[1], impact[2], time, Math.sin(heading),
+                    Math.cos(heading));
+            flight.sampleCount = segment;
+            flight.addImpact(samples, null);
+        }
+        return true;
+    }
+
+    /**
+     * Finds where a sampled flight first meets the ground. The path is marched in steps of about
+     * {@link #COARSE_STEP}, then sample by sample inside the first step that ends underground,
+     * then bisected down to a few cm, so a long flight costs a few dozen height lookups. Where
+     * there is no height data the path counts as clear.
+     *
+     * @param frame          local frame anchored at the launch point
+     * @param launchAltitude of the launch point, in m above sea level
+     * @param samples        (east, north, up) triples in m relative to the launch point
+     * @param sampleCount    number of triples in samples
+     * @param impact         receives the (east, north, up) point where the path meets the ground
+     * @return index of the first sample past the impact, 0 if the launch point is underground,
+     * or -1 if the path stays clear
+     */
+    public int findImpact(LocalFrame frame, double launchAltitude, double[] samples,
+                          int sampleCount, double[] impact) {
+        if (sampleCount == 0) {
+            return -1;
+        }
+        if (clearance(frame, launchAltitude,
+                samples[0], samples[1], samples[2]) <= 0) {
+            impact[0] = samples[0];
+            impact[1] = samples[1];
+            impact[2] = samples[2];
+            return 0;
+        }
+
+        int clear = 0;
+        double covered = 0;
+        for (int i = 1; i < sampleCount; i++) {
+            covered += Math.hypot(samples[3 * i] - samples[3 * i - 3],
+                    samples[3 * i + 1] - samples[3 * i - 2]);
+            if (covered < COARSE_STEP && i < sampleCount - 1) {
+                continue;
+            }
+            covered = 0;
+            if (!(clearance(frame, launchAltitude,
+                    samples[3 * i], samples[3 * i + 1], samples[3 * i + 2]) <= 0)) {
+                clear = i;
+                continue;
+            }
+
+            for (int j = clear + 1; j <= i; j++) {
+                if (j == i || clearance(frame, launchAltitude,
+                        samples[3 * j], samples[3 * j + 1], samples[3 * j + 2]) <= 0) {
+                    bisect(frame, launchAltitude, samples,
+                            j - 1, j, impact);
+                    return j;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void bisect(LocalFrame frame, double launchAltitude, double[] samples, int above,
+                        int below, double[] impact) {
+        double ae = samples[3 * above], an = samples[3 * above + 1], au = samples[3 * above + 2];
+        double be = samples[3 * below], bn = samples[3 * below + 1], bu = samples[3 * below + 2];
+        for (int i = 0; i < MAX_BISECTIONS; i++) {
+            double de = be - ae, dn = bn - an, du = bu - au;
+            if (de * de + dn * dn + du * du < IMPACT_TOLERANCE * IMPACT_TOLERANCE) {
+                break;
+            }
+            double me = ae + de / 2, mn = an + dn / 2, mu = au + du / 2;
+            if (clearance(frame, launchAltitude,
+                    me, mn, mu) <= 0) {
+                be = me;
+                bn = mn;
+                bu = mu;
+            } else {
+                ae = me;
+                an = mn;
+                au = mu;
+            }
+        }
+        impact[0] = be;
+        impact[1] = bn;
+        impact[2] = bu;
+    }
+
+    /**
+     * @return height of a point above the ground in m, NaN where there is no data
+     */
+    private double clearance(LocalFrame frame, double launchAltitude, double east, double north,
+                             double up) {
+        return launchAltitude + up - height(frame.latitude(north), frame.longitude(east));
+    }
+
+    private synchronized ShortBuffer tile(int latFloor, int lonFloor) {
+        int key = (latFloor + 90) * 360 + lonFloor + 180;
+        if (key != mLastKey) {
+            ShortBuffer tile = mTiles.get(key);
+            if (tile == null) {
+                tile = load(latFloor, lonFloor);
+                mTiles.put(key, tile);
+            }
+            mLastKey = key;
+            mLastTile = tile;
+        }
+        return mLastTile == mMissing ? null : mLastTile;
+    }
+
+    private ShortBuffer load(int latFloor, int lonFloor) {
+        File file = new File(mDirectory, String.format(Locale.US, "%c%02d%c%03d.hgt",
+                latFloor < 0 ? 'S' : 'N', Math.abs(latFloor),
+                lonFloor < 0 ? 'W' : 'E', Math.abs(lonFloor)));
+        if (!file.isFile()) {
+            return mMissing;
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                long size = channel.size();
+                int side = (int) Math.sqrt(size / 2);
+                if (side < 2 || 2L * side * side != size) {
+                    return mMissing;
+                }
+                // the mapping stays valid after the channel is closed
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size).asShortBuffer();
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not map " + file, e);
+            return mMissing;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package apps.bunch.im.archer;
+
+/**
+ * Puts readings that arrive at irregular times onto a uniform grid, so the filters after it see
+ * a fixed step no matter how the readings were batched or delivered. Each grid sample is linearly
+ * interpolated between the readings either side of it. Timestamps may be in any unit, as long as
+ * the period and max gap are in the same one.
+ * <p/>
+ * A gap longer than the max gap is not bridged; the grid starts again at the reading after it.
+ * Readings go in with {@link #add} and the grid samples they complete are taken out with
+ * {@link #next}, before the next reading is added. Nothing is allocated per reading. Not thread
+ * safe.
+ */
+public class UniformResampler {
+
+    private final int mChannels;
+    private final long mPeriod;
+    private final long mMaxGap;
+    private final double[] mPrevious;
+    private final double[] mLatest;
+    private long mPreviousTime;
+    private long mLatestTime;
+    private int mReadings;
+    // time of the next grid sample, and of the last one taken out
+    private long mNextTime;
+    private long mTime;
+
+    /**
+     * @param channels values per reading
+     * @param period   between grid samples
+     * @param maxGap   longest gap between readings that is interpolated across
+     */
+    public UniformResampler(int channels, long period, long maxGap) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + period);
+        }
+        mChannels = channels;
+        mPeriod = period;
+        mMaxGap = maxGap;
+        mPrevious = new double[channels];
+        mLatest = new double[channels];
+    }
+
+    /**
+     * Forgets all readings, the next one starts a new grid.
+     */
+    public void reset() {
+        mReadings = 0;
+    }
+
+    /**
+     * @param timestamp of the reading
+     * @param values    of the reading, one per channel
+     * @return false if the reading was not newer than the last and was ignored
+     */
+    public boolean add(long timestamp, double[] values) {
+        if (mReadings > 0 && timestamp <= mLatestTime) {
+            return false;
+        }
+        if (mReadings == 0 || timestamp - mLatestTime > mMaxGap) {
+            mReadings = 0;
+            mNextTime = timestamp;
+        } else {
+            System.arraycopy(mLatest, 0, mPrevious, 0, mChannels);
+            mPreviousTime = mLatestTime;
+            if (mNextTime <= mPreviousTime) {
+                // grid samples that were never taken out are dropped
+                mNextTime += ((mPreviousTime - mNextTime) / mPeriod + 1) * mPeriod;
+            }
+        }
+        System.arraycopy(values, 0, mLatest, 0, mChannels);
+        mLatestTime = timestamp;
+        mReadings++;
+        return true;
+    }
+
+    /**
+     * Takes out the next grid sample the readings so far reach.
+     *
+     * @param out receives the values of the sample, one per channel
+     * @return false if the readings do not reach the next grid sample yet
+     */
+    public boolean next(double[] out) {
+        if (mReadings == 0 || mNextTime > mLatestTime) {
+            return false;
+        }
+        if (mNextTime == mLatestTime) {
+            System.arraycopy(mLatest, 0, out, 0, mChannels);
+        } else {
+            double fraction = (double) (mNextTime - mPreviousTime) / (mLatestTime - mPreviousTime);
+            for (int i = 0; i < mChannels; i++) {
+                out[i] = mPrevious[i] + fraction * (mLatest[i] - mPrevious[i]);
+            }
+        }
+        mTime = mNextTime;
+        mNextTime += mPeriod;
+        return true;
+    }
+
+    /**
+     * @return timestamp of the grid sample last taken out with {@link #next}
+     */
+    public long getTimestamp() {
+        return mTime;
+    }
+}
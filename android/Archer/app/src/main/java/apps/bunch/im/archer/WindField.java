@@ -0,0 +1,187 @@
+package apps.bunch.im.archer;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Wind around the archer, looked up by {@link PhysicsEngine#simulate} at every integration stage.
+ * Positions and velocities are in the local east-north-up frame of the shot, in m and m/s.
+ * Implementations must not allocate in {@link #velocity}.
+ */
+public interface WindField {
+
+    /**
+     * @param east  m east of the launch point
+     * @param north m north of the launch point
+     * @param up    m above the launch point
+     * @param out   receives the (east, north, up) wind velocity in m/s
+     */
+    void velocity(double east, double north, double up, double[] out);
+
+    class Constant implements WindField {
+
+        private final double mEast;
+        private final double mNorth;
+        private final double mUp;
+
+        public Constant(double east, double north, double up) {
+            mEast = east;
+            mNorth = north;
+            mUp = up;
+        }
+
+        /**
+         * @param speed   wind speed in m/s
+         * @param heading direction the wind blows towards, in radians clockwise from north
+         */
+        public static Constant fromHeading(double speed, double heading) {
+            return new Constant(speed * Math.sin(heading), speed * Math.cos(heading), 0);
+        }
+
+        @Override
+        public void velocity(double east, double north, double up, double[] out) {
+            out[0] = mEast;
+            out[1] = mNorth;
+            out[2] = mUp;
+        }
+    }
+
+    /**
+     * Wind sampled on a regular grid and interpolated trilinearly, clamped to the edge values
+     * outside the grid. The grid is anchored at a latitude and longitude, so it has to be placed
+     * under a launch point with {@link #at} before it can fly a shot.
+     * <p/>
+     * The file is big-endian as written by {@link DataInputStream}: int nx, ny, nz, double origin
+     * latitude and longitude in degrees, float horizontal and vertical spacing in m, then
+     * nx * ny * nz float (east, north, up) triples with east varying fastest and height slowest.
+     * Height is measured from the launch point.
+     */
+    class Grid {
+
+        private final int mNx;
+        private final int mNy;
+        private final int mNz;
+        private final LocalFrame mFrame;
+        private final double mSpacing;
+        private final double mVerticalSpacing;
+        // interleaved (east, north, up) triples
+        private final float[] mData;
+
+        public Grid(int nx, int ny, int nz, double originLat, double originLon, double spacing,
+                    double verticalSpacing, float[] data) {
+            // written so that NaN spacing fails too
+            if (nx < 1 || ny < 1 || nz < 1 || !(spacing > 0) || !(verticalSpacing > 0)) {
+                throw new IllegalArgumentException("Bad wind grid dimensions");
+            }
+            if (data.length != 3 * nx * ny * nz) {
+                throw new IllegalArgumentException("Wind grid needs " + 3 * nx * ny * nz
+                        + " values, got " + data.length);
+            }
+            mNx = nx;
+            mNy = ny;
+            mNz = nz;
+            mFrame = new LocalFrame(originLat, originLon);
+            mSpacing = spacing;
+            mVerticalSpacing = verticalSpacing;
+            mData = data;
+        }
+
+        public static Grid load(File file) throws IOException {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            try {
+                int nx = in.readInt();
+                int ny = in.readInt();
+                int nz = in.readInt();
+                double originLat = in.readDouble();
+                double originLon = in.readDouble();
+                double spacing = in.readFloat();
+                double verticalSpacing = in.readFloat();
+                if (nx < 1 || ny < 1 || nz < 1 || (long) nx * ny * nz > Integer.MAX_VALUE / 3) {
+                    throw new IOException("Bad wind grid dimensions in " + file);
+                }
+                if (!(spacing > 0) || !(verticalSpacing > 0)) {
+                    throw new IOException("Bad wind grid spacing in " + file);
+                }
+                float[] data = new float[3 * nx * ny * nz];
+                for (int i = 0; i < data.length; i++) {
+                    data[i] = in.readFloat();
+                }
+                return new Grid(nx, ny, nz, originLat, originLon, spacing, verticalSpacing, data);
+            } finally {
+                in.close();
+            }
+        }
+
+        /**
+         * @param latitude  of the launch point, in degrees
+         * @param longitude of the launch point, in degrees
+         * @return the grid as seen from the launch point, to hand to the physics engine
+         */
+        public WindField at(double latitude, double longitude) {
+            return new View(this, mFrame.east(longitude), mFrame.north(latitude));
+        }
+
+        /**
+         * @param x   m east of the grid origin
+         * @param y   m north of the grid origin
+         * @param z   m above the launch point
+         * @param out receives the interpolated (east, north, up) wind velocity
+         */
+        public void velocity(double x, double y, double z, double[] out) {
+            double u = clamp(x / mSpacing, mNx - 1);
+            double v = clamp(y / mSpacing, mNy - 1);
+            double w = clamp(z / mVerticalSpacing, mNz - 1);
+            int i = (int) u;
+            int j = (int) v;
+            int k = (int) w;
+            double fu = u - i;
+            double fv = v - j;
+            double fw = w - k;
+
+            // strides to the next cell along each axis, zero on the far edge
+            int du = i < mNx - 1 ? 3 : 0;
+            int dv = j < mNy - 1 ? 3 * mNx : 0;
+            int dw = k < mNz - 1 ? 3 * mNx * mNy : 0;
+            int base = 3 * ((k * mNy + j) * mNx + i);
+
+            float[] d = mData;
+            for (int c = 0; c < 3; c++) {
+                int p = base + c;
+                double c00 = d[p] + fu * (d[p + du] - d[p]);
+                double c10 = d[p + dv] + fu * (d[p + dv + du] - d[p + dv]);
+                p += dw;
+                double c01 = d[p] + fu * (d[p + du] - d[p]);
+                double c11 = d[p + dv] + fu * (d[p + dv + du] - d[p + dv]);
+                double c0 = c00 + fv * (c10 - c00);
+                double c1 = c01 + fv * (c11 - c01);
+                out[c] = c0 + fw * (c1 - c0);
+            }
+        }
+
+        private static double clamp(double value, int max) {
+            return value < 0 ? 0 : value > max ? max : value;
+        }
+    }
+
+    class View implements WindField {
+
+        private final Grid mGrid;
+        private final double mEast;
+        private final double mNorth;
+
+        View(Grid grid, double east, double north) {
+            mGrid = grid;
+            mEast = east;
+            mNorth = north;
+        }
+
+        @Override
+        public void velocity(double east, double north, double up, double[] out) {
+            mGrid.velocity(east + mEast, north + mNorth, up, out);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package apps.bunch.im.archer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AimFusionTest {
+
+    private static final float[] PHONE = {2.5f, -0.3f, 0.4f};
+    // where the Myo's own frame sits against east, north, up, as if synced facing elsewhere
+    private static final MutableQuaternion OFFSET =
+            new MutableQuaternion().set(0.8, 0.1, -0.3, 0.5).normalize();
+
+    private final MutableQuaternion mQuaternion = new MutableQuaternion();
+    private final double[] mExpected = new double[3];
+    private final double[] mAim = new double[3];
+
+    @Test
+    public void orientationMatchesPipelineRotation() {
+        Random random = new Random(11);
+        float[] r = new float[9];
+        float[] orientation = new float[3];
+        double[] column = new double[3];
+        for (int i = 0; i < 200; i++) {
+            MutableQuaternion q = new MutableQuaternion();
+            if (i < 100) {
+                q.set(random.nextGaussian(), random.nextGaussian(), random.nextGaussian(),
+                        random.nextGaussian());
+            } else {
+                // half a turn about up, give or take a milliradian, so the yaw sits by +-pi,
+                // then tipped about a random horizontal axis
+                double angle = Math.PI + (i % 2 == 0 ? 1e-3 : -1e-3);
+                double tilt = random.nextDouble() - 0.5;
+                double heading = 2 * Math.PI * random.nextDouble();
+                q.multiply(new MutableQuaternion().set(Math.cos(angle / 2), 0, 0,
+                        Math.sin(angle / 2)), new MutableQuaternion().set(Math.cos(tilt / 2),
+                        Math.cos(heading) * Math.sin(tilt / 2),
+                        Math.sin(heading) * Math.sin(tilt / 2), 0));
+            }
+            q.normalize();
+            OrientationPipeline.rotationMatrixFromVector(r,
+                    new float[]{(float) q.x(), (float) q.y(), (float) q.z(), (float) q.w()});
+            if (Math.abs(r[7]) > 0.99) {
+                // straight up or down the yaw and roll can't be told apart
+                continue;
+            }
+            OrientationPipeline.orientation(r, orientation);
+            if (i >= 100) {
+                assertTrue(Math.abs(orientation[0]) > Math.PI - 0.6);
+            }
+
+            mQuaternion.setOrientation(orientation[0], orientation[1], orientation[2]);
+            // every device axis, the y axis being the aim, lands where the matrix puts it
+            for (int axis = 0; axis < 3; axis++) {
+                mQuaternion.rotate(axis == 0 ? 1 : 0, axis == 1 ? 1 : 0, axis == 2 ? 1 : 0,
+                        column);
+                for (int row = 0; row < 3; row++) {
+                    assertEquals(r[3 * row + axis], column[row], 1e-4);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void calibratedMyoGivesPhoneAim() {
+        AimFusion fusion = calibrated();
+        // only the Myo turns; once it has been still long enough for its variance to settle
+        // to the floor, both count the same and the aim is halfway between them
+        float[] turned = {-1.2f, 0.5f, -0.8f};
+        for (int i = 0; i < 300; i++) {
+            setMyo(fusion, turned);
+        }
+        double[] phone = new double[3];
+        mQuaternion.setOrientation(PHONE[0], PHONE[1], PHONE[2]).rotate(0, 1, 0, phone);
+        mQuaternion.setOrientation(turned[0], turned[1], turned[2]).rotate(0, 1, 0, mExpected);
+        double norm = 0;
+        for (int c = 0; c < 3; c++) {
+            mExpected[c] += phone[c];
+            norm += mExpected[c] * mExpected[c];
+        }
+        fusion.getAim(mAim);
+        for (int c = 0; c < 3; c++) {
+            assertEquals(mExpected[c] / Math.sqrt(norm), mAim[c], 1e-6);
+        }
+    }
+
+    @Test
+    public void leansTowardSteadierStream() {
+        float[] aside = {PHONE[0] + 0.05f, PHONE[1], PHONE[2]};
+
+        // a shaking phone and a still Myo pointing a little to the side
+        AimFusion fusion = calibrated();
+        Random random = new Random(2);
+        for (int i = 0; i < 100; i++) {
+            fusion.setPhoneOrientation(shake(PHONE, random));
+            setMyo(fusion, aside);
+        }
+        assertTrue(fusion.getPhoneVariance() > fusion.getMyoVariance());
+        assertEquals(aside[0], yaw(fusion), 0.01);
+
+        // and the other way round
+        fusion = calibrated();
+        for (int i = 0; i < 100; i++) {
+            fusion.setPhoneOrientation(PHONE);
+            setMyo(fusion, shake(aside, random));
+        }
+        assertTrue(fusion.getPhoneVariance() < fusion.getMyoVariance());
+        assertEquals(PHONE[0], yaw(fusion), 0.01);
+    }
+
+    @Test
+    public void phoneAloneUntilCalibrated() {
+        AimFusion fusion = new AimFusion();
+        mQuaternion.setOrientation(PHONE[0], PHONE[1], PHONE[2]).rotate(0, 1, 0, mExpected);
+        Random random = new Random(4);
+        // a Myo too restless to calibrate against, pointing elsewhere
+        float[] elsewhere = {0, 0.2f, 0};
+        for (int i = 0; i < 50; i++) {
+            fusion.setPhoneOrientation(PHONE);
+            setMyo(fusion, shake(elsewhere, random));
+        }
+        assertFalse(fusion.isCalibrated());
+        assertPhoneAim(fusion);
+
+        fusion = calibrated();
+        fusion.resetMyo();
+        assertFalse(fusion.isCalibrated());
+        for (int i = 0; i < 50; i++) {
+            fusion.setPhoneOrientation(PHONE);
+            setMyo(fusion, shake(elsewhere, random));
+        }
+        assertFalse(fusion.isCalibrated());
+        assertPhoneAim(fusion);
+    }
+
+    /**
+     * @return fusion calibrated with both held still on PHONE
+     */
+    private AimFusion calibrated() {
+        AimFusion fusion = new AimFusion();
+        for (int i = 0; i < 20; i++) {
+            fusion.setPhoneOrientation(PHONE);
+            setMyo(fusion, PHONE);
+        }
+        assertTrue(fusion.isCalibrated());
+        return fusion;
+    }
+
+    /**
+     * Feeds the Myo reading it would give, in its own frame, with the phone at the orientation.
+     */
+    private void setMyo(AimFusion fusion, float[] orientation) {
+        mQuaternion.setOrientation(orientation[0], orientation[1], orientation[2]);
+        mQuaternion.multiply(OFFSET, mQuaternion);
+        fusion.setMyoOrientation(mQuaternion.w(), mQuaternion.x(), mQuaternion.y(),
+                mQuaternion.z());
+    }
+
+    private void assertPhoneAim(AimFusion fusion) {
+        fusion.getAim(mAim);
+        for (int c = 0; c < 3; c++) {
+            assertEquals(mExpected[c], mAim[c], 1e-6);
+        }
+    }
+
+    private static float[] shake(float[] orientation, Random random) {
+        return new float[]{orientation[0] + 0.1f * (float) random.nextGaussian(),
+                orientation[1] + 0.1f * (float) random.nextGaussian(), orientation[2]};
+    }
+
+    private static double yaw(AimFusion fusion) {
+        float[] out = new float[3];
+        fusion.getOrientation(out);
+        return out[0];
+    }
+}
@@ -0,0 +1,66 @@
+package apps.bunch.im.archer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AimHistoryTest {
+
+    private final float[] mIn = new float[3];
+    private final float[] mOut = new float[3];
+
+    @Test
+    public void interpolatesBetweenEntries() {
+        AimHistory history = new AimHistory(8);
+        assertFalse(history.get(0, mOut));
+        add(history, 100, 0.1f, 0.2f, 0.3f);
+        add(history, 200, 0.3f, 0.4f, 0.5f);
+        assertTrue(history.get(150, mOut));
+        assertEquals(0.2, mOut[0], 1e-6);
+        assertEquals(0.3, mOut[1], 1e-6);
+        assertEquals(0.4, mOut[2], 1e-6);
+    }
+
+    @Test
+    public void clampsToEnds() {
+        AimHistory history = new AimHistory(8);
+        add(history, 100, 0.1f, 0.2f, 0.3f);
+        add(history, 200, 0.3f, 0.4f, 0.5f);
+        history.get(0, mOut);
+        assertEquals(0.1, mOut[0], 1e-6);
+        history.get(Long.MAX_VALUE, mOut);
+        assertEquals(0.3, mOut[0], 1e-6);
+    }
+
+    @Test
+    public void interpolatesAnglesShortestWay() {
+        AimHistory history = new AimHistory(8);
+        add(history, 0, 3.0f, 0, -3.0f);
+        add(history, 100, -3.0f, 0, 3.0f);
+        history.get(50, mOut);
+        assertEquals(Math.PI, Math.abs(mOut[0]), 1e-6);
+        assertEquals(Math.PI, Math.abs(mOut[2]), 1e-6);
+    }
+
+    @Test
+    public void dropsOldestWhenFull() {
+        AimHistory history = new AimHistory(4);
+        for (int i = 0; i < 10; i++) {
+            add(history, i * 10, i * 0.1f, 0, 0);
+        }
+        assertFalse(add(history, 90, 0, 0, 0));
+        history.get(0, mOut);
+        assertEquals(0.6, mOut[0], 1e-6);
+        history.get(75, mOut);
+        assertEquals(0.75, mOut[0], 1e-6);
+    }
+
+    private boolean add(AimHistory history, long timestamp, float yaw, float pitch, float roll) {
+        mIn[0] = yaw;
+        mIn[1] = pitch;
+        mIn[2] = roll;
+        return history.add(timestamp, mIn);
+    }
+}
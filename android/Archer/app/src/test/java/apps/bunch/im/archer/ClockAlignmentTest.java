@@ -0,0 +1,60 @@
+package apps.bunch.im.archer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClockAlignmentTest {
+
+    private static final long MS = 1000000;
+    private static final long OFFSET = 123456789 * MS;
+    private static final long MIN_LATENCY = 5 * MS;
+
+    @Test
+    public void findsOffsetFromFastestReadings() {
+        ClockAlignment alignment = new ClockAlignment();
+        assertFalse(alignment.isAligned());
+        feed(alignment, new Random(1), 0, 0, 10000);
+        assertTrue(alignment.isAligned());
+        assertEquals(OFFSET + MIN_LATENCY, alignment.getOffset(), MS);
+        assertTrue(alignment.getUncertainty() > 0);
+        assertTrue(alignment.getUncertainty() < 10 * MS);
+    }
+
+    @Test
+    public void tracksDrift() {
+        ClockAlignment alignment = new ClockAlignment();
+        double drift = 80e-6;
+        feed(alignment, new Random(2), 0, drift, 60000);
+        assertEquals(drift, alignment.getDrift(), 20e-6);
+        // 60 s of drift is almost 5 ms, which a fixed offset would miss
+        long remote = 60000 * MS;
+        long expected = OFFSET + MIN_LATENCY + Math.round(drift * remote);
+        assertEquals(remote + expected, alignment.toLocal(remote), MS);
+    }
+
+    @Test
+    public void startsAgainWhenRemoteClockGoesBack() {
+        ClockAlignment alignment = new ClockAlignment();
+        feed(alignment, new Random(3), 0, 0, 5000);
+        alignment.add(1000 * MS, 1000 * MS + 7 * MS);
+        assertEquals(7 * MS, alignment.getOffset());
+    }
+
+    /**
+     * Readings every 20 ms of remote time, received after a latency of at least MIN_LATENCY and
+     * usually a good deal more.
+     */
+    private static void feed(ClockAlignment alignment, Random random, long start, double drift,
+                             long duration) {
+        for (long ms = start; ms <= start + duration; ms += 20) {
+            long remote = ms * MS;
+            long latency = MIN_LATENCY + (long) (-Math.log(1 - random.nextDouble()) * 10 * MS);
+            alignment.add(remote, remote + Math.round(drift * remote) + OFFSET + latency);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package apps.bunch.im.archer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DrawForceEstimatorTest {
+
+    private static final long PERIOD = 20; // ms, 50 Hz like the Myo
+    private static final double G = 9.81;
+    private static final double FULL_DRAW_FORCE = 1000;
+    // speeds up for half a second then slows down for another, 0.5 m in all
+    private static final double DRAW_ACCELERATION = 2; // m/s^2
+    private static final int DRAW_SAMPLES = 25; // each way
+    private static final double DRAW_LENGTH = 0.5; // m
+    private static final double DRAW_SPEED = DRAW_ACCELERATION * DRAW_SAMPLES * PERIOD / 1000.0;
+
+    @Test
+    public void integratesDraw() {
+        DrawForceEstimator estimator = new DrawForceEstimator(FULL_DRAW_FORCE);
+        estimator.setOrientation(1, 0, 0, 0);
+        long time = draw(estimator, 0, 0, 0, 1);
+
+        assertEquals(2 * DRAW_SAMPLES + 1, estimator.getSampleCount());
+        assertEquals(DRAW_LENGTH, estimator.getDrawLength(), 1e-3);
+        assertEquals(DRAW_SPEED, estimator.getPeakSpeed(), 1e-6);
+        double fraction = DRAW_LENGTH / DrawForceEstimator.DEFAULT_DRAW_LENGTH;
+        assertEquals(FULL_DRAW_FORCE * fraction * fraction, estimator.getForce(), 1);
+
+        // the hand comes forward again on release, the peak draw is what counts
+        for (int i = 0; i < DRAW_SAMPLES; i++) {
+            time += PERIOD;
+            estimator.addSample(time, DRAW_ACCELERATION / G, 0, 1);
+        }
+        assertEquals(DRAW_LENGTH, estimator.getDrawLength(), 1e-3);
+    }
+
+    @Test
+    public void removesGravityInWorldFrame() {
+        DrawForceEstimator estimator = new DrawForceEstimator(FULL_DRAW_FORCE);
+        // turned a quarter about x, so the sensor y axis points up
+        estimator.setOrientation(Math.sqrt(0.5), Math.sqrt(0.5), 0, 0);
+        draw(estimator, 0, 0, 1, 0);
+
+        assertEquals(DRAW_LENGTH, estimator.getDrawLength(), 1e-3);
+    }
+
+    @Test
+    public void takesGravityFromFirstSampleWithoutOrientation() {
+        DrawForceEstimator estimator = new DrawForceEstimator(FULL_DRAW_FORCE);
+        draw(estimator, 0, 0.6, 0, 0.8);
+
+        assertEquals(DRAW_LENGTH, estimator.getDrawLength(), 1e-3);
+    }
+
+    @Test
+    public void zeroesVelocityWhileStill() {
+        DrawForceEstimator estimator = new DrawForceEstimator(FULL_DRAW_FORCE);
+        estimator.setOrientation(1, 0, 0, 0);
+        long time = draw(estimator, 0, 0, 0, 1);
+        // holding for two seconds with a bias just under the still threshold, which would run
+        // the draw over 30 cm further if it were integrated throughout
+        double bias = 0.9 * DrawForceEstimator.STILL_ACCELERATION;
+        for (int i = 0; i < 100; i++) {
+            time += PERIOD;
+            estimator.addSample(time, -bias, 0, 1);
+        }
+
+        assertTrue(estimator.getDrawLength() + " m",
+                estimator.getDrawLength() < DRAW_LENGTH + 0.01);
+    }
+
+    @Test
+    public void capsAtFullDraw() {
+        DrawForceEstimator estimator = new DrawForceEstimator(FULL_DRAW_FORCE, 0.4);
+        estimator.setOrientation(1, 0, 0, 0);
+        draw(estimator, 0, 0, 0, 1);
+
+        assertEquals(0.4, estimator.getDrawLength(), 1e-9);
+        assertEquals(FULL_DRAW_FORCE, estimator.getForce(), 1e-6);
+
+        estimator.reset();
+        assertEquals(0, estimator.getSampleCount());
+        assertEquals(0, estimator.getForce(), 0);
+    }
+
+    /**
+     * Draws the hand back along the world -x axis, which the sensor reads as gravity plus the
+     * acceleration, starting with one still sample at the given time.
+     *
+     * @return time of the last sample
+     */
+    private static long draw(DrawForceEstimator estimator, long time,
+                             double gx, double gy, double gz) {
+        estimator.addSample(time, gx, gy, gz);
+        for (int i = 0; i < 2 * DRAW_SAMPLES; i++) {
+            time += PERIOD;
+            double a = (i < DRAW_SAMPLES ? -DRAW_ACCELERATION : DRAW_ACCELERATION) / G;
+            estimator.addSample(time, gx + a, gy, gz);
+        }
+        return time;
+    }
+}
@@ -0,0 +1,47 @@
+package apps.bunch.im.archer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FixedPointLabelTest {
+
+    @Test
+    public void writesDecimals() {
+        assertEquals("123.4", format(1234, 1));
+        assertEquals("7.250", format(7250, 3));
+        assertEquals("42", format(42, 0));
+    }
+
+    @Test
+    public void padsSmallValues() {
+        assertEquals("0.0", format(0, 1));
+        assertEquals("0.05", format(5, 2));
+        assertEquals("0.007", format(7, 3));
+    }
+
+    @Test
+    public void writesNegativeValues() {
+        assertEquals("-0.5", format(-5, 1));
+        assertEquals("-359.9", format(-3599, 1));
+    }
+
+    @Test
+    public void writesAtOffset() {
+        char[] out = "Angle: ??????".toCharArray();
+        int end = FixedPointLabel.format(905, 1, out, 7);
+        assertEquals("Angle: 90.5", new String(out, 0, end));
+    }
+
+    @Test
+    public void writesLongestValues() {
+        assertEquals(Long.toString(Long.MAX_VALUE), format(Long.MAX_VALUE, 0));
+        assertEquals("-" + Long.MAX_VALUE, format(Long.MIN_VALUE, 0));
+    }
+
+    private static String format(long scaled, int decimals) {
+        char[] out = new char[21];
+        int end = FixedPointLabel.format(scaled, decimals, out, 0);
+        return new String(out, 0, end);
+    }
+}
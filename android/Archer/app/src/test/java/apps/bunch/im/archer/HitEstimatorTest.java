@@ -0,0 +1,66 @@
+package apps.bunch.im.archer;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.SphericalUtil;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HitEstimatorTest {
+
+    private static final double FORCE = 54; // N
+    private static final LatLng SOURCE = new LatLng(37.4, -122.1);
+    private static final LatLng TARGET = SphericalUtil.computeOffset(SOURCE, 150, 60);
+    private static final long BUDGET = TimeUnit.SECONDS.toNanos(60);
+
+    @Test
+    public void sameSeedGivesSameEstimate() {
+        HitEstimator estimator = new HitEstimator();
+        float[] orientation = aimAt(TARGET);
+        int trials = 8 * HitEstimator.DEFAULT_TRIALS;
+
+        double first = estimator.estimate(SOURCE, TARGET, FORCE, orientation, trials, 7, BUDGET);
+        assertEquals(trials, estimator.getTrials());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(first,
+                    estimator.estimate(SOURCE, TARGET, FORCE, orientation, trials, 7, BUDGET), 0);
+        }
+        // an aimed shot with the default noise lands in the ring more often than not
+        assertTrue(first > 0.5 && first < 1);
+        assertTrue(first != estimator.estimate(SOURCE, TARGET, FORCE, orientation, trials, 8,
+                BUDGET));
+    }
+
+    @Test
+    public void withoutNoiseHitsOrMisses() {
+        HitEstimator estimator = new HitEstimator(0, 0, 0, 0);
+        assertEquals(1, estimator.estimate(SOURCE, TARGET, FORCE, aimAt(TARGET), 1000, 1,
+                BUDGET), 0);
+
+        float[] away = aimAt(TARGET);
+        away[0] += (float) Math.PI;
+        assertEquals(0, estimator.estimate(SOURCE, TARGET, FORCE, away, 1000, 1, BUDGET), 0);
+    }
+
+    @Test
+    public void dropsTrialsPastBudget() {
+        HitEstimator estimator = new HitEstimator();
+        assertEquals(0, estimator.estimate(SOURCE, TARGET, FORCE, aimAt(TARGET), 100000, 1, -1),
+                0);
+        assertEquals(0, estimator.getTrials());
+    }
+
+    /**
+     * @return orientation that lands an unperturbed shot on the target, on the low arc
+     */
+    private static float[] aimAt(LatLng target) {
+        AimSolution solution = new AimSolution();
+        assertTrue(PhysicsEngine.solveElevation(SOURCE, target, FORCE, solution));
+        return new float[]{(float) Math.toRadians(SphericalUtil.computeHeading(SOURCE, target)),
+                (float) -solution.lowElevation, 0};
+    }
+}
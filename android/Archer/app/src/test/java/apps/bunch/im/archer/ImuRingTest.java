@@ -0,0 +1,99 @@
+package apps.bunch.im.archer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ImuRingTest {
+
+    @Test
+    public void keepsOrderAndValues() {
+        ImuRing ring = new ImuRing(8);
+        ImuRing.Record record = new ImuRing.Record();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(ring.offer(fill(record, i)));
+        }
+        for (int i = 0; i < 5; i++) {
+            assertTrue(ring.poll(record));
+            check(record, i);
+        }
+        assertFalse(ring.poll(record));
+    }
+
+    @Test
+    public void dropsWhenFull() {
+        ImuRing ring = new ImuRing(4);
+        ImuRing.Record record = new ImuRing.Record();
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(fill(record, i)));
+        }
+        assertFalse(ring.offer(fill(record, 4)));
+        assertEquals(1, ring.getDropped());
+        assertTrue(ring.poll(record));
+        check(record, 0);
+        assertTrue(ring.offer(fill(record, 5)));
+        for (int i : new int[]{1, 2, 3, 5}) {
+            assertTrue(ring.poll(record));
+            check(record, i);
+        }
+    }
+
+    @Test
+    public void passesRecordsBetweenThreads() throws InterruptedException {
+        final ImuRing ring = new ImuRing(64);
+        final int records = 1000000;
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ImuRing.Record record = new ImuRing.Record();
+                for (int i = 0; i < records; i++) {
+                    fill(record, i);
+                    while (!ring.offer(record)) {
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+        producer.start();
+        ImuRing.Record record = new ImuRing.Record();
+        for (int i = 0; i < records; i++) {
+            while (!ring.poll(record)) {
+                Thread.yield();
+            }
+            check(record, i);
+        }
+        producer.join();
+        assertFalse(ring.poll(record));
+    }
+
+    private static ImuRing.Record fill(ImuRing.Record record, int i) {
+        record.timestamp = i;
+        record.received = 1000L * i;
+        record.parts = i & 7;
+        record.pulling = (i & 1) != 0;
+        for (int j = 0; j < 4; j++) {
+            record.orientation[j] = i + j;
+        }
+        for (int j = 0; j < 3; j++) {
+            record.acceleration[j] = i + 4 + j;
+            record.rotationRate[j] = i + 7 + j;
+        }
+        return record;
+    }
+
+    private static void check(ImuRing.Record record, int i) {
+        assertEquals(i, record.timestamp);
+        assertEquals(1000L * i, record.received);
+        assertEquals(i & 7, record.parts);
+        assertEquals((i & 1) != 0, record.pulling);
+        for (int j = 0; j < 4; j++) {
+            assertEquals(i + j, record.orientation[j], 0);
+        }
+        for (int j = 0; j < 3; j++) {
+            assertEquals(i + 4 + j, record.acceleration[j], 0);
+            assertEquals(i + 7 + j, record.rotationRate[j], 0);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package apps.bunch.im.archer;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.SphericalUtil;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LocalFrameTest {
+
+    @Test
+    public void convertsBothWays() {
+        LocalFrame frame = new LocalFrame(-33.9, 151.2);
+        assertEquals(-33.9, frame.latitude(0), 0);
+        assertEquals(151.2, frame.longitude(0), 0);
+        assertEquals(1234.5, frame.north(frame.latitude(1234.5)), 1e-6);
+        assertEquals(-678.9, frame.east(frame.longitude(-678.9)), 1e-6);
+
+        double[] points = {100, 200, 5, -300, 400, 0};
+        double[] latitudes = new double[2];
+        double[] longitudes = new double[2];
+        frame.toLatLng(points, 2, latitudes, longitudes);
+        LatLng second = frame.toLatLng(-300, 400);
+        assertEquals(second.latitude, latitudes[1], 0);
+        assertEquals(second.longitude, longitudes[1], 0);
+    }
+
+    @Test
+    public void takesShortWayAcrossAntimeridian() {
+        LocalFrame frame = new LocalFrame(0, 179.999);
+        double east = frame.east(-179.999);
+        assertEquals(SphericalUtil.computeDistanceBetween(new LatLng(0, 179.999),
+                new LatLng(0, -179.999)), east, 1e-6);
+    }
+
+    @Test
+    public void staysWithinStatedErrorOfSphere() {
+        // the longest shot the range table holds
+        AimSolution solution = new AimSolution();
+        PhysicsEngine.solveElevation(Double.MAX_VALUE, PhysicsEngine.MAX_PULL_FORCE, solution);
+        double range = RangeTable.getInstance().distance(PhysicsEngine.MAX_PULL_FORCE,
+                solution.lowElevation);
+        assertEquals(3300, range, 100);
+
+        double[] latitudes = {0, 30, 45, 60, 80, -60};
+        double[] stated = {0, 0.6, 1.0, 1.7, 5.7, 1.7};
+        for (int i = 0; i < latitudes.length; i++) {
+            LatLng anchor = new LatLng(latitudes[i], 10);
+            LocalFrame frame = new LocalFrame(anchor);
+            double bound = range * range * Math.tan(Math.toRadians(Math.abs(latitudes[i])))
+                    / (Math.sqrt(3) * LocalFrame.EARTH_RADIUS);
+            double worst = 0;
+            for (int heading = 0; heading < 360; heading += 5) {
+                double radians = Math.toRadians(heading);
+                LatLng flat = frame.toLatLng(range * Math.sin(radians),
+                        range * Math.cos(radians));
+                LatLng sphere = SphericalUtil.computeOffset(anchor, range, heading);
+                worst = Math.max(worst, SphericalUtil.computeDistanceBetween(flat, sphere));
+            }
+            assertTrue(worst + " m at " + latitudes[i], worst <= 1.01 * bound + 1e-3);
+            assertEquals(stated[i], worst, 0.05 + 0.05 * stated[i]);
+        }
+    }
+}
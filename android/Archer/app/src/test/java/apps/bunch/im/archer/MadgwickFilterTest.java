@@ -0,0 +1,123 @@
+package apps.bunch.im.archer;
+
+import android.hardware.Sensor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MadgwickFilterTest {
+
+    private static final float EPSILON = 1e-3f;
+    private static final long PERIOD = 5000000; // ns, 200 Hz
+    private static final float[] FLAT = {0, 0, 9.81f};
+
+    @Test
+    public void startsFromCompass() {
+        MadgwickFilter filter = new MadgwickFilter();
+        assertFalse(filter.onSensorChanged(Sensor.TYPE_GYROSCOPE, new float[3], 0));
+        filter.onSensorChanged(Sensor.TYPE_ACCELEROMETER, FLAT, 0);
+        filter.onSensorChanged(Sensor.TYPE_MAGNETIC_FIELD, field(Math.PI / 2), 0);
+        assertTrue(filter.onSensorChanged(Sensor.TYPE_GYROSCOPE, new float[3], PERIOD));
+
+        assertEquals(Math.PI / 2, filter.getYaw(), EPSILON);
+        assertEquals(0, filter.getPitch(), EPSILON);
+    }
+
+    @Test
+    public void startsTiltedUp() {
+        MadgwickFilter filter = new MadgwickFilter();
+        // top edge raised by 0.3 rad, gravity tips towards the bottom edge
+        double pitch = 0.3;
+        filter.onSensorChanged(Sensor.TYPE_ACCELEROMETER, new float[]{0,
+                (float) (9.81 * Math.sin(pitch)), (float) (9.81 * Math.cos(pitch))}, 0);
+        filter.onSensorChanged(Sensor.TYPE_MAGNETIC_FIELD, new float[]{0, 20, -40}, 0);
+        assertTrue(filter.onSensorChanged(Sensor.TYPE_GYROSCOPE, new float[3], 0));
+
+        assertEquals(0, filter.getYaw(), EPSILON);
+        assertEquals(-pitch, filter.getPitch(), EPSILON);
+    }
+
+    @Test
+    public void followsGyroscope() {
+        MadgwickFilter filter = new MadgwickFilter();
+        // turning clockwise seen from above at 1 rad/s for a second
+        float[] rate = {0, 0, -1};
+        long timestamp = 0;
+        filter.onSensorChanged(Sensor.TYPE_ACCELEROMETER, FLAT, timestamp);
+        for (int i = 0; i <= 200; i++) {
+            filter.onSensorChanged(Sensor.TYPE_MAGNETIC_FIELD, field(i * PERIOD * 1e-9),
+                    timestamp);
+            filter.onSensorChanged(Sensor.TYPE_GYROSCOPE, rate, timestamp);
+            timestamp += PERIOD;
+        }
+
+        assertEquals(1, filter.getYaw(), 0.01);
+        assertEquals(0, filter.getPitch(), EPSILON);
+    }
+
+    @Test
+    public void correctsDrift() {
+        MadgwickFilter filter = new MadgwickFilter();
+        long timestamp = 0;
+        filter.onSensorChanged(Sensor.TYPE_ACCELEROMETER, FLAT, timestamp);
+        filter.onSensorChanged(Sensor.TYPE_MAGNETIC_FIELD, field(0), timestamp);
+        filter.onSensorChanged(Sensor.TYPE_GYROSCOPE, new float[3], timestamp);
+        // the gyroscope misses a quarter turn the compass sees, which is made up within a minute
+        filter.onSensorChanged(Sensor.TYPE_MAGNETIC_FIELD, field(Math.PI / 2), timestamp);
+        for (int i = 0; i < 60 * 200; i++) {
+            timestamp += PERIOD;
+            filter.onSensorChanged(Sensor.TYPE_GYROSCOPE, new float[3], timestamp);
+        }
+
+        assertEquals(Math.PI / 2, filter.getYaw(), 0.01);
+    }
+
+    @Test
+    public void steadyStateDoesNotAllocate() {
+        ThreadAllocations allocations = new ThreadAllocations();
+        MadgwickFilter filter = new MadgwickFilter();
+        float[] gyroscope = new float[3];
+        float[] accelerometer = new float[3];
+        float[] magneticField = new float[3];
+        float[] orientation = new float[3];
+
+        // warm up so the measured loop runs compiled code
+        feed(filter, gyroscope, accelerometer, magneticField, orientation, 200000);
+
+        allocations.start();
+        feed(filter, gyroscope, accelerometer, magneticField, orientation, 10000);
+        long allocated = allocations.stop();
+
+        assertEquals("bytes allocated over 30000 events", 0, allocated);
+    }
+
+    /**
+     * @param yaw heading of the device lying flat, clockwise from north
+     * @return magnetometer reading for a field pointing north and down
+     */
+    private static float[] field(double yaw) {
+        return new float[]{(float) (-20 * Math.sin(yaw)), (float) (20 * Math.cos(yaw)), -40};
+    }
+
+    private static void feed(MadgwickFilter filter, float[] gyroscope, float[] accelerometer,
+                             float[] magneticField, float[] orientation, int events) {
+        for (int i = 0; i < events; i++) {
+            float angle = i * 0.001f;
+            long timestamp = i * PERIOD;
+            accelerometer[0] = (float) Math.sin(angle);
+            accelerometer[1] = 1;
+            accelerometer[2] = 9.7f;
+            filter.onSensorChanged(Sensor.TYPE_ACCELEROMETER, accelerometer, timestamp);
+            magneticField[0] = (float) (20 * Math.cos(angle));
+            magneticField[1] = (float) (20 * Math.sin(angle));
+            magneticField[2] = -40;
+            filter.onSensorChanged(Sensor.TYPE_MAGNETIC_FIELD, magneticField, timestamp);
+            gyroscope[2] = (float) Math.sin(angle);
+            filter.onSensorChanged(Sensor.TYPE_GYROSCOPE, gyroscope, timestamp);
+            filter.getOrientation(orientation);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package apps.bunch.im.archer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OneEuroFilterTest {
+
+    private static final long PERIOD = 20000000; // ns, 50 Hz
+
+    @Test
+    public void steadiesJitterAtRest() {
+        OneEuroFilter filter = new OneEuroFilter(0.3, 1.0, false);
+        Random random = new Random(1);
+        double worst = 0;
+        for (int i = 0; i < 500; i++) {
+            double value = filter.filter(0.01 * random.nextGaussian(), i * PERIOD);
+            if (i >= 250) {
+                worst = Math.max(worst, Math.abs(value));
+            }
+        }
+        // the readings stray 0.01 on average, the output a small part of that
+        assertTrue("strayed " + worst, worst < 0.005);
+    }
+
+    @Test
+    public void followsSwingQuickly() {
+        OneEuroFilter filter = new OneEuroFilter(0.3, 1.0, false);
+        for (int i = 0; i < 50; i++) {
+            filter.filter(0, i * PERIOD);
+        }
+        // swing through one radian in half a second, then hold
+        double value = 0;
+        for (int i = 50; i < 100; i++) {
+            value = filter.filter(Math.min(1, (i - 49) / 25.0), i * PERIOD);
+        }
+        // a fixed 0.3 Hz filter would still be well short of it
+        assertEquals(1, value, 0.1);
+    }
+
+    @Test
+    public void speedDoesNotDependOnSampleRate() {
+        // a steady 0.2 rad/s swing for three seconds, through the wrap at pi
+        double speed = 0.2;
+        long[] periods = {66666667, PERIOD, 5000000}; // 15, 50 and 200 Hz
+        for (long period : periods) {
+            OneEuroFilter filter = new OneEuroFilter(0.3, 1.0, true);
+            for (long t = 0; t <= 3000000000L; t += period) {
+                filter.filter(Math.PI - 0.3 + speed * t * 1e-9, t);
+            }
+            assertEquals("at " + 1e9 / period + " Hz", speed, filter.getSpeed(), 1e-3);
+        }
+    }
+
+    @Test
+    public void wrapsAngles() {
+        OneEuroFilter filter = new OneEuroFilter(0.3, 1.0, true);
+        filter.filter(Math.PI - 0.05, 0);
+        for (int i = 1; i < 200; i++) {
+            double value = filter.filter(-Math.PI + 0.05, i * PERIOD);
+            // never the long way round through zero
+            assertTrue("went through " + value, Math.abs(value) > Math.PI - 0.06);
+        }
+        assertEquals(-Math.PI + 0.05, filter.getValue(), 1e-3);
+    }
+
+    @Test
+    public void ignoresStaleReadings() {
+        OneEuroFilter filter = new OneEuroFilter(0.3, 1.0, false);
+        filter.filter(1, PERIOD);
+        assertEquals(1, filter.filter(5, PERIOD), 0);
+        assertEquals(1, filter.filter(5, 0), 0);
+    }
+}
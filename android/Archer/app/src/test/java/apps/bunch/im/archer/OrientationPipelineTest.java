@@ -0,0 +1,163 @@
+package apps.bunch.im.archer;
+
+import android.hardware.Sensor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OrientationPipelineTest {
+
+    private static final float EPSILON = 1e-4f;
+
+    @Test
+    public void flatPointingNorth() {
+        OrientationPipeline pipeline = new OrientationPipeline();
+        pipeline.onSensorChanged(Sensor.TYPE_ACCELEROMETER, new float[]{0, 0, 9.81f}, 0);
+        assertTrue(pipeline.onSensorChanged(Sensor.TYPE_MAGNETIC_FIELD,
+                new float[]{0, 20, -40}, 0));
+
+        float[] orientation = new float[3];
+        pipeline.getOrientation(orientation);
+        assertEquals(0, orientation[0], EPSILON);
+        assertEquals(0, orientation[1], EPSILON);
+        assertEquals(0, orientation[2], EPSILON);
+    }
+
+    @Test
+    public void flatPointingEast() {
+        OrientationPipeline pipeline = new OrientationPipeline();
+        pipeline.onSensorChanged(Sensor.TYPE_ACCELEROMETER, new float[]{0, 0, 9.81f}, 0);
+        // north is off the left edge of the device
+        assertTrue(pipeline.onSensorChanged(Sensor.TYPE_MAGNETIC_FIELD,
+                new float[]{-20, 0, -40}, 0));
+
+        float[] orientation = new float[3];
+        pipeline.getOrientation(orientation);
+        assertEquals(Math.PI / 2, orientation[0], EPSILON);
+    }
+
+    @Test
+    public void freeFallGivesNoOrientation() {
+        OrientationPipeline pipeline = new OrientationPipeline();
+        pipeline.onSensorChanged(Sensor.TYPE_ACCELEROMETER, new float[]{0, 0, 0.1f}, 0);
+        assertFalse(pipeline.onSensorChanged(Sensor.TYPE_MAGNETIC_FIELD,
+                new float[]{0, 20, -40}, 0));
+    }
+
+    @Test
+    public void copiesReadings() {
+        OrientationPipeline pipeline = new OrientationPipeline();
+        float[] values = {0, 0, 9.81f};
+        pipeline.onSensorChanged(Sensor.TYPE_ACCELEROMETER, values, 0);
+        // the framework reuses the array for the next event
+        values[0] = 9.81f;
+        values[2] = 0;
+        assertTrue(pipeline.onSensorChanged(Sensor.TYPE_MAGNETIC_FIELD,
+                new float[]{0, 20, -40}, 0));
+
+        float[] orientation = new float[3];
+        pipeline.getOrientation(orientation);
+        assertEquals(0, orientation[2], EPSILON);
+    }
+
+    @Test
+    public void rotationVectorPointingEast() {
+        OrientationPipeline pipeline =
+                new OrientationPipeline(new OrientationSource.RotationVector(),
+                        OrientationPipeline.DEFAULT_MIN_CUTOFF, OrientationPipeline.DEFAULT_BETA);
+        // a quarter turn clockwise seen from above is -pi/2 about the world up axis
+        float half = (float) (-Math.PI / 4);
+        assertTrue(pipeline.onSensorChanged(Sensor.TYPE_ROTATION_VECTOR,
+                new float[]{0, 0, (float) Math.sin(half), (float) Math.cos(half), 0}, 0));
+
+        float[] orientation = new float[3];
+        pipeline.getOrientation(orientation);
+        assertEquals(Math.PI / 2, orientation[0], EPSILON);
+        assertEquals(0, orientation[1], EPSILON);
+        assertEquals(0, orientation[2], EPSILON);
+    }
+
+    @Test
+    public void rotationVectorWithoutScalar() {
+        OrientationPipeline pipeline =
+                new OrientationPipeline(new OrientationSource.RotationVector(),
+                        OrientationPipeline.DEFAULT_MIN_CUTOFF, OrientationPipeline.DEFAULT_BETA);
+        // tilted nose up by 0.3 rad about the device x axis
+        float half = 0.15f;
+        assertTrue(pipeline.onSensorChanged(Sensor.TYPE_ROTATION_VECTOR,
+                new float[]{(float) Math.sin(half), 0, 0}, 0));
+
+        float[] orientation = new float[3];
+        pipeline.getOrientation(orientation);
+        assertEquals(-0.3, orientation[1], EPSILON);
+    }
+
+    @Test
+    public void gameRotationVectorFollowsCompass() {
+        OrientationPipeline pipeline =
+                new OrientationPipeline(new OrientationSource.GameRotationVector(0.5f),
+                        OrientationPipeline.DEFAULT_MIN_CUTOFF, OrientationPipeline.DEFAULT_BETA);
+        float[] orientation = new float[3];
+        // the game rotation vector starts out thinking the device points north
+        float[] game = {0, 0, 0, 1};
+        assertTrue(pipeline.onSensorChanged(Sensor.TYPE_GAME_ROTATION_VECTOR, game, 0));
+        // but the compass says east
+        pipeline.onSensorChanged(Sensor.TYPE_ACCELEROMETER, new float[]{0, 0, 9.81f}, 0);
+        assertFalse(pipeline.onSensorChanged(Sensor.TYPE_MAGNETIC_FIELD,
+                new float[]{-20, 0, -40}, 0));
+        assertTrue(pipeline.onSensorChanged(Sensor.TYPE_GAME_ROTATION_VECTOR, game, 0));
+        pipeline.getOrientation(orientation);
+        assertEquals(Math.PI / 2, orientation[0], EPSILON);
+
+        // later compass readings only pull part of the way
+        pipeline.onSensorChanged(Sensor.TYPE_MAGNETIC_FIELD, new float[]{0, 20, -40}, 0);
+        assertTrue(pipeline.onSensorChanged(Sensor.TYPE_GAME_ROTATION_VECTOR, game, 0));
+        pipeline.getOrientation(orientation);
+        assertEquals(Math.PI / 4, orientation[0], EPSILON);
+
+        // and accelerometer readings do not pull at all
+        pipeline.onSensorChanged(Sensor.TYPE_ACCELEROMETER, new float[]{0, 0, 9.81f}, 0);
+        assertTrue(pipeline.onSensorChanged(Sensor.TYPE_GAME_ROTATION_VECTOR, game, 0));
+        pipeline.getOrientation(orientation);
+        assertEquals(Math.PI / 4, orientation[0], EPSILON);
+    }
+
+    @Test
+    public void steadyStateDoesNotAllocate() {
+        ThreadAllocations allocations = new ThreadAllocations();
+        OrientationPipeline pipeline = new OrientationPipeline();
+        float[] accelerometer = new float[3];
+        float[] magneticField = new float[3];
+        float[] smoothed = new float[3];
+
+        // warm up so the measured loop runs compiled code
+        feed(pipeline, accelerometer, magneticField, smoothed, 0, 200000);
+
+        allocations.start();
+        feed(pipeline, accelerometer, magneticField, smoothed, 200000, 10000);
+        long allocated = allocations.stop();
+
+        assertEquals("bytes allocated over 20000 events", 0, allocated);
+    }
+
+    private static void feed(OrientationPipeline pipeline, float[] accelerometer,
+                             float[] magneticField, float[] smoothed, int first,
+                             int events) {
+        for (int i = first; i < first + events; i++) {
+            float angle = i * 0.001f;
+            accelerometer[0] = (float) Math.sin(angle);
+            accelerometer[1] = 1;
+            accelerometer[2] = 9.7f;
+            long timestamp = i * 20000000L;
+            pipeline.onSensorChanged(Sensor.TYPE_ACCELEROMETER, accelerometer, timestamp);
+            magneticField[0] = (float) (20 * Math.cos(angle));
+            magneticField[1] = (float) (20 * Math.sin(angle));
+            magneticField[2] = -40;
+            pipeline.onSensorChanged(Sensor.TYPE_MAGNETIC_FIELD, magneticField, timestamp);
+            pipeline.getSmoothed(smoothed);
+        }
+    }
+}
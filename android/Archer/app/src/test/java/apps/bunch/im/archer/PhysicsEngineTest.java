@@ -0,0 +1,206 @@
+package apps.bunch.im.archer;
+
+import android.hardware.Sensor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PhysicsEngineTest {
+
+    private static final double FORCE = 54; // N, launches the arrow at 60 m/s
+    private static final double ELEVATION = Math.toRadians(30);
+
+    @Test
+    public void rk4MatchesFinerSteps() {
+        Flight reference = new Flight();
+        assertTrue(PhysicsEngine.simulate(FORCE, 0.3, ELEVATION, PhysicsEngine.Integrator.RK4,
+                1e-4, reference, (double[]) null));
+        Flight flight = new Flight();
+        assertTrue(PhysicsEngine.simulate(FORCE, 0.3, ELEVATION, PhysicsEngine.Integrator.RK4,
+                0.01, flight, (double[]) null));
+
+        assertEquals(reference.distance, flight.distance, 1e-3);
+        assertEquals(reference.time, flight.time, 1e-4);
+        assertEquals(flight.distance * Math.sin(0.3), flight.impactEast, 1e-9);
+        assertEquals(flight.distance * Math.cos(0.3), flight.impactNorth, 1e-9);
+        assertEquals(0, flight.impactUp, 0);
+    }
+
+    @Test
+    public void semiImplicitEulerConvergesAtFirstOrder() {
+        Flight flight = new Flight();
+        PhysicsEngine.simulate(FORCE, 0, ELEVATION, PhysicsEngine.Integrator.RK4, 1e-3, flight,
+                (double[]) null);
+        double reference = flight.distance;
+        PhysicsEngine.simulate(FORCE, 0, ELEVATION, PhysicsEngine.Integrator.SEMI_IMPLICIT_EULER,
+                0.01, flight, (double[]) null);
+        double coarse = Math.abs(flight.distance - reference);
+        PhysicsEngine.simulate(FORCE, 0, ELEVATION, PhysicsEngine.Integrator.SEMI_IMPLICIT_EULER,
+                0.005, flight, (double[]) null);
+        double fine = Math.abs(flight.distance - reference);
+
+        assertTrue(coarse + " m", coarse < 1);
+        assertEquals(2, coarse / fine, 0.1);
+    }
+
+    @Test
+    public void slowArrowFliesAsInVacuum() {
+        // at 6 m/s drag is under a hundredth of gravity
+        double force = 0.5;
+        double speed = PhysicsEngine.launchSpeed(force);
+        Flight flight = new Flight();
+        PhysicsEngine.simulate(force, 0, ELEVATION, PhysicsEngine.Integrator.RK4, 1e-3, flight,
+                (double[]) null);
+
+        double range = speed * speed * Math.sin(2 * ELEVATION) / PhysicsEngine.gravity;
+        double time = 2 * speed * Math.sin(ELEVATION) / PhysicsEngine.gravity;
+        assertEquals(range, flight.distance, 0.01 * range);
+        assertEquals(time, flight.time, 0.01 * time);
+        assertTrue(flight.distance < range);
+    }
+
+    @Test
+    public void samplesCoverWholeFlight() {
+        double[] samples = new double[3 * 16];
+        Flight flight = new Flight();
+        PhysicsEngine.simulate(FORCE, 0, ELEVATION, PhysicsEngine.Integrator.RK4, 1e-3, flight,
+                samples);
+
+        // thousands of steps, halved down until they fit
+        assertTrue(flight.sampleStride > 1);
+        assertTrue(flight.sampleCount > 8 && flight.sampleCount <= 16);
+        assertEquals(0, samples[0], 0);
+        assertEquals(0, samples[1], 0);
+        assertEquals(0, samples[2], 0);
+        int last = 3 * (flight.sampleCount - 1);
+        assertEquals(flight.impactEast, samples[last], 0);
+        assertEquals(flight.impactNorth, samples[last + 1], 0);
+        assertEquals(flight.impactUp, samples[last + 2], 0);
+        for (int i = 1; i < flight.sampleCount; i++) {
+            assertTrue(samples[3 * i + 1] > samples[3 * i - 2]);
+        }
+
+        float[] floatSamples = new float[samples.length];
+        PhysicsEngine.simulate(FORCE, 0, ELEVATION, PhysicsEngine.Integrator.RK4, 1e-3, flight,
+                floatSamples);
+        for (int i = 0; i < 3 * flight.sampleCount; i++) {
+            assertEquals(samples[i], floatSamples[i], 1e-3);
+        }
+    }
+
+    @Test
+    public void dormandPrinceMatchesFineRk4() {
+        double[] forces = {1e2, 1e4, 1e6, PhysicsEngine.MAX_FORCE};
+        double[] elevations = {Math.toRadians(5), Math.toRadians(45), Math.toRadians(85)};
+        double tolerance = PhysicsEngine.SOLVE_TOLERANCE;
+        Flight flight = new Flight();
+        Flight reference = new Flight();
+        for (double force : forces) {
+            for (double elevation : elevations) {
+                String shot = force + " N at " + Math.toDegrees(elevation) + " degrees";
+                assertTrue(shot, PhysicsEngine.simulate(force, 0.3, elevation,
+                        PhysicsEngine.Integrator.DORMAND_PRINCE, tolerance, flight,
+                        (double[]) null));
+                assertTrue(shot, flight.steps < 100);
+                // a fixed step fine enough to be well inside the tolerance, whatever the range
+                assertTrue(shot, PhysicsEngine.simulate(force, 0.3, elevation,
+                        PhysicsEngine.Integrator.RK4, flight.time / 40000, reference,
+                        (double[]) null));
+
+                double miss = Math.hypot(flight.impactEast - reference.impactEast,
+                        flight.impactNorth - reference.impactNorth);
+                assertTrue(shot + " missed by " + miss + " m", miss < tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void solversRoundTrip() {
+        // force, distance
+        double[][] shots = {{FORCE, 150}, {FORCE, 20}, {5000, 1500}};
+        RangeTable table = RangeTable.getInstance();
+        AimSolution solution = new AimSolution();
+        Flight flight = new Flight();
+        for (double[] shot : shots) {
+            double force = shot[0];
+            double distance = shot[1];
+            assertTrue(PhysicsEngine.solveElevation(distance, force, solution));
+            assertTrue(solution.iterations <= 3 * PhysicsEngine.MAX_SOLVE_ITERATIONS);
+            assertEquals(force, PhysicsEngine.TimeToForce(0, solution.pullTime), 1e-3 * force);
+            double[] elevations = {solution.lowElevation, solution.highElevation};
+            assertTrue(elevations[0] < elevations[1]);
+
+            for (double elevation : elevations) {
+                assertEquals(distance, table.distance(force, elevation),
+                        PhysicsEngine.SOLVE_TOLERANCE);
+                PhysicsEngine.simulate(force, 0, elevation,
+                        PhysicsEngine.Integrator.DORMAND_PRINCE, PhysicsEngine.SOLVE_TOLERANCE,
+                        flight, (double[]) null);
+                assertEquals(distance, flight.distance, 0.01 * distance);
+
+                assertTrue(PhysicsEngine.solveForce(distance, elevation, solution));
+                assertEquals(force, solution.force, 5e-3 * force);
+                assertEquals(elevation, solution.lowElevation, 0);
+            }
+        }
+    }
+
+    @Test
+    public void solversGiveBestTryOutOfRange() {
+        RangeTable table = RangeTable.getInstance();
+        AimSolution solution = new AimSolution();
+        assertFalse(PhysicsEngine.solveElevation(1e6, FORCE, solution));
+        assertEquals(solution.lowElevation, solution.highElevation, 0);
+        double longest = table.distance(FORCE, solution.lowElevation);
+        assertTrue(longest >= table.distance(FORCE, solution.lowElevation - 0.01));
+        assertTrue(longest >= table.distance(FORCE, solution.lowElevation + 0.01));
+
+        assertFalse(PhysicsEngine.solveForce(1e6, ELEVATION, solution));
+        assertEquals(PhysicsEngine.MAX_PULL_FORCE, solution.force, 0);
+    }
+
+    @Test
+    public void noseUpLandsDownrange() {
+        float[] orientation = orientation(Math.toRadians(30));
+        assertTrue("pitch is negative with the top edge raised", orientation[1] < 0);
+
+        Flight flight = new Flight();
+        PhysicsEngine.arrowFlightLatLng(new LocalFrame(0, 0), FORCE, orientation, flight, null);
+        assertTrue(flight.distance > 0);
+        assertTrue(flight.impactNorth > 0);
+        assertEquals(0, flight.impactEast, 1e-6);
+
+        Flight expected = new Flight();
+        PhysicsEngine.simulate(FORCE, 0, Math.toRadians(30),
+                PhysicsEngine.Integrator.DORMAND_PRINCE, PhysicsEngine.SOLVE_TOLERANCE, expected,
+                (double[]) null);
+        assertEquals(expected.distance, flight.distance, 2 * PhysicsEngine.SOLVE_TOLERANCE);
+    }
+
+    @Test
+    public void noseDownGoesIntoGround() {
+        Flight flight = new Flight();
+        PhysicsEngine.arrowFlightLatLng(new LocalFrame(0, 0), FORCE,
+                orientation(Math.toRadians(-30)), flight, null);
+        assertEquals(0, flight.distance, 1e-6);
+    }
+
+    /**
+     * @param elevation of the top edge of the phone above the horizon, pointing north
+     * @return the orientation the pipeline makes of it
+     */
+    private static float[] orientation(double elevation) {
+        OrientationPipeline pipeline = new OrientationPipeline();
+        // gravity tips towards the bottom edge as the top edge is raised
+        pipeline.onSensorChanged(Sensor.TYPE_ACCELEROMETER, new float[]{0,
+                (float) (9.81 * Math.sin(elevation)), (float) (9.81 * Math.cos(elevation))}, 0);
+        assertTrue(pipeline.onSensorChanged(Sensor.TYPE_MAGNETIC_FIELD,
+                new float[]{0, 20, -40}, 0));
+        float[] orientation = new float[3];
+        pipeline.getOrientation(orientation);
+        return orientation;
+    }
+}
@@ -0,0 +1,90 @@
+package apps.bunch.im.archer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RangeTableTest {
+
+    private static final double SPEED_ROOT_MAX =
+            Math.sqrt(PhysicsEngine.launchSpeed(PhysicsEngine.MAX_PULL_FORCE));
+    private static final double ELEVATION_ROOT_MAX = Math.sqrt(Math.sqrt(Math.PI / 2));
+
+    private final RangeTable mTable = RangeTable.getInstance();
+    private final Flight mFlight = new Flight();
+    private double mMaxError;
+    private double mMaxRelativeError;
+    private double mMaxTimeError;
+
+    @Test
+    public void matchesSolverBetweenGridPoints() {
+        // bilinear error peaks in the middle of each cell
+        for (int i = 0; i < RangeTable.FORCE_STEPS; i++) {
+            for (int j = 0; j < RangeTable.ELEVATION_STEPS; j++) {
+                check((i + 0.5) / RangeTable.FORCE_STEPS, (j + 0.5) / RangeTable.ELEVATION_STEPS);
+            }
+        }
+        assertBounds();
+    }
+
+    @Test
+    public void matchesSolverAtRandom() {
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            check(random.nextDouble(), random.nextDouble());
+        }
+        assertBounds();
+    }
+
+    @Test
+    public void scoresAimIntoGroundAsZero() {
+        assertEquals(0, mTable.distance(1000, 0), 0);
+        assertEquals(0, mTable.distance(1000, -0.3), 0);
+        assertEquals(0, mTable.time(1000, -0.3), 0);
+    }
+
+    @Test
+    public void scoresNoseUpPitchDownrange() {
+        float[] orientation = {0, (float) -Math.toRadians(30), 0};
+        LocalFrame frame = new LocalFrame(0, 0);
+        double north = frame.north(
+                PhysicsEngine.arrowFlightLatLng(frame.toLatLng(0, 0), 1000, orientation).latitude);
+        assertEquals(mTable.distance(1000, Math.toRadians(30)), north, 1e-3);
+        assertTrue(north > 0);
+    }
+
+    /**
+     * Checks a shot spaced like the table axes, each fraction running from 0 to 1.
+     */
+    private void check(double speedFraction, double elevationFraction) {
+        double speedRoot = speedFraction * SPEED_ROOT_MAX;
+        double speed = speedRoot * speedRoot;
+        double force = speed * speed * PhysicsEngine.mass / 2;
+        double elevationRoot = elevationFraction * ELEVATION_ROOT_MAX;
+        double elevation = elevationRoot * elevationRoot * elevationRoot * elevationRoot;
+        if (force <= 0 || elevation <= 0) {
+            return;
+        }
+        PhysicsEngine.simulate(force, 0, elevation, PhysicsEngine.Integrator.DORMAND_PRINCE,
+                PhysicsEngine.SOLVE_TOLERANCE, mFlight, (double[]) null);
+        double error = Math.abs(mTable.distance(force, elevation) - mFlight.distance);
+        mMaxError = Math.max(mMaxError, error);
+        if (mFlight.distance > 10 && elevation > Math.toRadians(0.1)) {
+            mMaxRelativeError = Math.max(mMaxRelativeError, error / mFlight.distance);
+        }
+        mMaxTimeError = Math.max(mMaxTimeError,
+                Math.abs(mTable.time(force, elevation) - mFlight.time));
+    }
+
+    /**
+     * The bounds given in the RangeTable class comment.
+     */
+    private void assertBounds() {
+        assertTrue(mMaxError + " m", mMaxError < 3.8);
+        assertTrue(mMaxRelativeError * 100 + " %", mMaxRelativeError < 0.014);
+        assertTrue(mMaxTimeError + " s", mMaxTimeError < 0.6);
+    }
+}
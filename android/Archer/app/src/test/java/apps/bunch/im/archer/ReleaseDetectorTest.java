@@ -0,0 +1,106 @@
+package apps.bunch.im.archer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReleaseDetectorTest {
+
+    private static final long PERIOD = 20; // ms, the Myo streams at 50 Hz
+
+    private final Random mRandom = new Random(1);
+    private long mTime;
+
+    @Test
+    public void detectsReleaseAfterHold() {
+        ReleaseDetector detector = new ReleaseDetector();
+        assertFalse(draw(detector, 600));
+        assertFalse(hold(detector, 1000));
+        long release = mTime;
+        int samples = 0;
+        boolean detected = false;
+        while (!detected && samples < 10) {
+            detected = sample(detector, 0.9, 400);
+            samples++;
+        }
+        assertTrue(detected);
+        assertEquals(ReleaseDetector.WINDOW, samples);
+        assertEquals(release, detector.getReleaseTime());
+        assertTrue(detector.isReleased());
+        // only once per pull
+        assertFalse(sample(detector, 0.9, 400));
+    }
+
+    @Test
+    public void ignoresSingleKnock() {
+        ReleaseDetector detector = new ReleaseDetector();
+        hold(detector, 1000);
+        assertFalse(sample(detector, 2.0, 600));
+        assertFalse(hold(detector, 100));
+        assertFalse(detector.isReleased());
+    }
+
+    @Test
+    public void needsHoldBeforeRelease() {
+        ReleaseDetector detector = new ReleaseDetector();
+        // still, then a draw that would pass for a release if it came after a hold
+        hold(detector, 1000);
+        assertFalse(draw(detector, 600));
+        for (int i = 0; i < 5; i++) {
+            assertFalse(sample(detector, 0.9, 400));
+        }
+        assertFalse(hold(detector, 100));
+        assertFalse(detector.isReleased());
+    }
+
+    @Test
+    public void resetsForNextPull() {
+        ReleaseDetector detector = new ReleaseDetector();
+        hold(detector, 1000);
+        for (int i = 0; i < ReleaseDetector.WINDOW; i++) {
+            sample(detector, 0.9, 400);
+        }
+        assertTrue(detector.isReleased());
+        detector.reset();
+        assertFalse(detector.isReleased());
+        hold(detector, 1000);
+        boolean detected = false;
+        for (int i = 0; i < ReleaseDetector.WINDOW; i++) {
+            detected = sample(detector, 0.9, 400);
+        }
+        assertTrue(detected);
+    }
+
+    /**
+     * Steady draw of the string, brisk enough to score but never past the thresholds.
+     */
+    private boolean draw(ReleaseDetector detector, long duration) {
+        boolean detected = false;
+        for (long end = mTime + duration; mTime < end; ) {
+            detected |= sample(detector, 1.3, 100);
+        }
+        return detected;
+    }
+
+    /**
+     * Still at full draw, with sensor noise.
+     */
+    private boolean hold(ReleaseDetector detector, long duration) {
+        boolean detected = false;
+        for (long end = mTime + duration; mTime < end; ) {
+            detected |= sample(detector, 1 + 0.01 * mRandom.nextGaussian(),
+                    5 * mRandom.nextGaussian());
+        }
+        return detected;
+    }
+
+    private boolean sample(ReleaseDetector detector, double acceleration, double rotation) {
+        long time = mTime;
+        mTime += PERIOD;
+        return detector.addSample(time, 0, 0, acceleration, rotation, 0, 0);
+    }
+}
@@ -0,0 +1,86 @@
+package apps.bunch.im.archer;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShotBatchTest {
+
+    // several leaves of the parallel path, and not a whole number of them
+    private static final int SHOTS = 5000;
+
+    private final double[] mForce = new double[SHOTS];
+    private final double[] mYaw = new double[SHOTS];
+    private final double[] mPitch = new double[SHOTS];
+    private final double[] mSourceLat = new double[SHOTS];
+    private final double[] mSourceLon = new double[SHOTS];
+
+    public ShotBatchTest() {
+        Random random = new Random(3);
+        for (int i = 0; i < SHOTS; i++) {
+            mForce[i] = 1e4 * random.nextDouble();
+            // angles a float holds exactly, as arrowFlightLatLng takes them
+            mYaw[i] = (float) (2 * Math.PI * random.nextDouble() - Math.PI);
+            // mostly nose up, some into the ground
+            mPitch[i] = (float) (-Math.PI / 2 * random.nextDouble() + 0.2);
+            mSourceLat[i] = 170 * random.nextDouble() - 85;
+            mSourceLon[i] = 360 * random.nextDouble() - 180;
+        }
+    }
+
+    @Test
+    public void parallelMatchesSerial() {
+        double[][] serial = evaluate(false);
+        double[][] parallel = evaluate(true);
+        for (int i = 0; i < serial.length; i++) {
+            assertTrue(Arrays.equals(serial[i], parallel[i]));
+        }
+    }
+
+    @Test
+    public void matchesArrowFlightLatLng() {
+        double[][] results = evaluate(true);
+        for (int i = 0; i < SHOTS; i++) {
+            LatLng impact = PhysicsEngine.arrowFlightLatLng(new LatLng(mSourceLat[i],
+                    mSourceLon[i]), mForce[i], new float[]{(float) mYaw[i], (float) mPitch[i], 0});
+            assertEquals(impact.latitude, results[0][i], 0);
+            assertEquals(impact.longitude, results[1][i], 0);
+        }
+    }
+
+    @Test
+    public void scoresIntoGroundAsZero() {
+        double[][] results = evaluate(false);
+        for (int i = 0; i < SHOTS; i++) {
+            if (mPitch[i] > 0) {
+                assertEquals(0, results[2][i], 0);
+                assertEquals(mSourceLat[i], results[0][i], 0);
+            } else {
+                assertTrue(results[2][i] >= 0);
+                assertTrue(results[3][i] >= 0);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsShortArrays() {
+        ShotBatch.evaluate(mForce, mYaw, mPitch, mSourceLat, mSourceLon, SHOTS,
+                new double[SHOTS], new double[SHOTS - 1], null, null, false);
+    }
+
+    /**
+     * @return impact latitudes, longitudes, distances and times
+     */
+    private double[][] evaluate(boolean parallel) {
+        double[][] results = new double[4][SHOTS];
+        ShotBatch.evaluate(mForce, mYaw, mPitch, mSourceLat, mSourceLon, SHOTS, results[0],
+                results[1], results[2], results[3], parallel);
+        return results;
+    }
+}
@@ -0,0 +1,145 @@
+package apps.bunch.im.archer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TerrainTest {
+
+    private static final int SIZE = 121; // 30 arc second cells
+    private static final double GROUND = 100; // m above sea level
+    private static final double TOLERANCE = 0.05; // m, what the impact is bisected down to
+    private static final double FORCE = 54; // N
+    private static final double ELEVATION = Math.toRadians(30);
+
+    private final LocalFrame mFrame = new LocalFrame(37.5, -122.5);
+    private final Flight mFlight = new Flight();
+    private final double[] mSamples = new double[3 * 256];
+    private final double[] mImpact = new double[3];
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("terrain", "");
+        assertTrue(mDirectory.delete() && mDirectory.mkdir());
+        // flat ground under the frame, and a slope rising east and south in the tile north of it
+        writeTile("N37W123.hgt", 0, 0);
+        writeTile("N38W123.hgt", 2, 3);
+    }
+
+    @After
+    public void tearDown() {
+        // a tile that is still mapped can't be deleted on every platform
+        for (File file : mDirectory.listFiles()) {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+        if (!mDirectory.delete()) {
+            mDirectory.deleteOnExit();
+        }
+    }
+
+    @Test
+    public void interpolatesHeights() {
+        Terrain terrain = new Terrain(mDirectory);
+        assertEquals(GROUND, terrain.height(37.5, -122.5), 0);
+        // 10.25 rows down from the north edge and 40.5 columns in from the west edge
+        assertEquals(GROUND + 2 * 10.25 + 3 * 40.5,
+                terrain.height(39 - 10.25 / (SIZE - 1), -123 + 40.5 / (SIZE - 1)), 1e-6);
+        assertTrue(Double.isNaN(terrain.height(36.5, -122.5)));
+    }
+
+    @Test
+    public void reloadsEvictedTiles() {
+        // room for one tile, so each lookup evicts the other and maps its own again
+        Terrain terrain = new Terrain(mDirectory, 1);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(GROUND, terrain.height(37.5, -122.5), 0);
+            // the middle of the sloped tile, 60 rows and 60 columns in
+            assertEquals(GROUND + 2 * 60 + 3 * 60, terrain.height(38.5, -122.5), 1e-6);
+        }
+    }
+
+    @Test
+    public void landsOnFlatGroundLikeFloor() {
+        Terrain terrain = new Terrain(mDirectory);
+        // launched from 1.5 m above the ground and from the top of a 50 m drop onto it
+        double[] heights = {1.5, 50};
+        Flight expected = new Flight();
+        for (double height : heights) {
+            assertTrue(terrain.simulate(mFrame, GROUND + height, FORCE, 0.4, ELEVATION, null,
+                    PhysicsEngine.SOLVE_TOLERANCE, mFlight, mSamples, mImpact));
+            PhysicsEngine.simulate(FORCE, 0.4, ELEVATION, null, -height,
+                    PhysicsEngine.Integrator.DORMAND_PRINCE, PhysicsEngine.SOLVE_TOLERANCE,
+                    expected, null);
+
+            assertEquals(-height, mImpact[2], TOLERANCE);
+            assertEquals(expected.impactEast, mImpact[0], TOLERANCE);
+            assertEquals(expected.impactNorth, mImpact[1], TOLERANCE);
+            assertEquals(expected.impactEast, mFlight.impactEast, TOLERANCE);
+            assertEquals(expected.impactNorth, mFlight.impactNorth, TOLERANCE);
+            // the ground is found to within TOLERANCE, a couple of ms of the fall
+            assertEquals(expected.time, mFlight.time, 2e-3);
+            int last = 3 * (mFlight.sampleCount - 1);
+            assertEquals(mFlight.impactNorth, mSamples[last + 1], 0);
+        }
+    }
+
+    @Test
+    public void bisectsCrossingToTolerance() {
+        Terrain terrain = new Terrain(mDirectory);
+        // a straight path coming down through the ground 100 m north, sampled every 40 m
+        double[] samples = new double[3 * 6];
+        for (int i = 0; i < 6; i++) {
+            samples[3 * i + 1] = 40 * i;
+            samples[3 * i + 2] = 10 - 0.1 * 40 * i;
+        }
+        assertEquals(3, terrain.findImpact(mFrame, GROUND, samples, 6, mImpact));
+        assertEquals(0, mImpact[0], 0);
+        assertEquals(100, mImpact[1], TOLERANCE);
+        assertEquals(0, mImpact[2], TOLERANCE);
+        assertTrue(mImpact[2] <= 0);
+    }
+
+    @Test
+    public void startsUnderground() {
+        Terrain terrain = new Terrain(mDirectory);
+        double[] samples = {0, 0, 0, 0, 10, 1};
+        assertEquals(0, terrain.findImpact(mFrame, GROUND - 1, samples, 2, mImpact));
+    }
+
+    @Test
+    public void clearWithoutData() {
+        Terrain terrain = new Terrain(mDirectory);
+        LocalFrame frame = new LocalFrame(36.5, -122.5);
+        assertFalse(terrain.simulate(frame, GROUND, FORCE, 0, ELEVATION, null,
+                PhysicsEngine.SOLVE_TOLERANCE, mFlight, mSamples, mImpact));
+    }
+
+    /**
+     * Writes a tile whose height rises by the given amounts per row south and per column east.
+     */
+    private void writeTile(String name, int perRow, int perColumn) throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(new File(mDirectory, name)));
+        try {
+            for (int row = 0; row < SIZE; row++) {
+                for (int column = 0; column < SIZE; column++) {
+                    out.writeShort((int) GROUND + perRow * row + perColumn * column);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package apps.bunch.im.archer;
+
+import org.junit.Assume;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Counts the bytes allocated by the current thread, for tests that check a loop allocates
+ * nothing. The count comes from a HotSpot extension of the thread MX bean, so a test using this
+ * is skipped on JVMs that do not have it or cannot count allocations per thread.
+ */
+class ThreadAllocations {
+
+    private final com.sun.management.ThreadMXBean mThreads;
+    private final long mThread;
+    // allocated by reading the count itself
+    private final long mOverhead;
+    private long mStart;
+
+    ThreadAllocations() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("No per-thread allocation counts on this JVM", supported(threads));
+        mThreads = (com.sun.management.ThreadMXBean) threads;
+        mThread = Thread.currentThread().getId();
+        long overhead = read();
+        mOverhead = read() - overhead;
+    }
+
+    /**
+     * Starts counting from now.
+     */
+    void start() {
+        mStart = read();
+    }
+
+    /**
+     * @return bytes allocated by the thread since {@link #start}
+     */
+    long stop() {
+        return read() - mStart - mOverhead;
+    }
+
+    private long read() {
+        return mThreads.getThreadAllocatedBytes(mThread);
+    }
+
+    private static boolean supported(ThreadMXBean threads) {
+        try {
+            return threads instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) threads)
+                    .isThreadAllocatedMemorySupported()
+                    && ((com.sun.management.ThreadMXBean) threads)
+                    .isThreadAllocatedMemoryEnabled();
+        } catch (NoClassDefFoundError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package apps.bunch.im.archer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UniformResamplerTest {
+
+    private final double[] mIn = new double[2];
+    private final double[] mOut = new double[2];
+
+    @Test
+    public void interpolatesOntoGrid() {
+        UniformResampler resampler = new UniformResampler(2, 20, 100);
+        // a ramp of 1 per ms, read at irregular times
+        long[] times = {1000, 1007, 1031, 1045, 1052, 1080, 1093};
+        long expected = 1000;
+        for (long time : times) {
+            add(resampler, time);
+            while (resampler.next(mOut)) {
+                assertEquals(expected, resampler.getTimestamp());
+                assertEquals(expected, mOut[0], 1e-9);
+                assertEquals(-2.0 * expected, mOut[1], 1e-9);
+                expected += 20;
+            }
+        }
+        assertEquals(1100, expected);
+    }
+
+    @Test
+    public void waitsForReadingsPastGridSample() {
+        UniformResampler resampler = new UniformResampler(2, 20, 100);
+        add(resampler, 0);
+        assertTrue(resampler.next(mOut));
+        assertFalse(resampler.next(mOut));
+        add(resampler, 19);
+        assertFalse(resampler.next(mOut));
+        add(resampler, 21);
+        assertTrue(resampler.next(mOut));
+        assertEquals(20, resampler.getTimestamp());
+        assertEquals(20, mOut[0], 1e-9);
+    }
+
+    @Test
+    public void restartsAfterGap() {
+        UniformResampler resampler = new UniformResampler(2, 20, 100);
+        add(resampler, 0);
+        resampler.next(mOut);
+        add(resampler, 505);
+        assertTrue(resampler.next(mOut));
+        assertEquals(505, resampler.getTimestamp());
+        assertEquals(505, mOut[0], 1e-9);
+        assertFalse(resampler.next(mOut));
+    }
+
+    @Test
+    public void ignoresReadingsOutOfOrder() {
+        UniformResampler resampler = new UniformResampler(2, 20, 100);
+        add(resampler, 100);
+        resampler.next(mOut);
+        assertFalse(add(resampler, 100));
+        assertFalse(add(resampler, 90));
+        add(resampler, 120);
+        assertTrue(resampler.next(mOut));
+        assertEquals(120, resampler.getTimestamp());
+        assertEquals(120, mOut[0], 1e-9);
+    }
+
+    @Test
+    public void dropsSamplesNotTakenOut() {
+        UniformResampler resampler = new UniformResampler(2, 20, 100);
+        add(resampler, 0);
+        add(resampler, 50);
+        add(resampler, 90);
+        assertTrue(resampler.next(mOut));
+        assertEquals(60, resampler.getTimestamp());
+        assertEquals(60, mOut[0], 1e-9);
+    }
+
+    private boolean add(UniformResampler resampler, long time) {
+        mIn[0] = time;
+        mIn[1] = -2.0 * time;
+        return resampler.add(time, mIn);
+    }
+}
@@ -0,0 +1,177 @@
+package apps.bunch.im.archer;
+
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WindFieldTest {
+
+    private static final int NX = 4;
+    private static final int NY = 3;
+    private static final int NZ = 2;
+    private static final double SPACING = 100; // m
+    private static final double VERTICAL_SPACING = 50; // m
+    private static final double LAT = 37.4;
+    private static final double LON = -122.1;
+
+    private final double[] mOut = new double[3];
+
+    @Test
+    public void interpolatesTrilinearly() {
+        WindField.Grid grid = new WindField.Grid(NX, NY, NZ, LAT, LON, SPACING, VERTICAL_SPACING,
+                data());
+        Random random = new Random(5);
+        for (int i = 0; i < 1000; i++) {
+            double x = (NX - 1) * SPACING * random.nextDouble();
+            double y = (NY - 1) * SPACING * random.nextDouble();
+            double z = (NZ - 1) * VERTICAL_SPACING * random.nextDouble();
+            grid.velocity(x, y, z, mOut);
+            // trilinear interpolation is exact for a field of this form
+            for (int c = 0; c < 3; c++) {
+                assertEquals(field(c, x, y, z), mOut[c], 1e-4);
+            }
+        }
+    }
+
+    @Test
+    public void clampsToEdges() {
+        WindField.Grid grid = new WindField.Grid(NX, NY, NZ, LAT, LON, SPACING, VERTICAL_SPACING,
+                data());
+        grid.velocity(-500, 1e4, 1e3, mOut);
+        for (int c = 0; c < 3; c++) {
+            assertEquals(field(c, 0, (NY - 1) * SPACING, (NZ - 1) * VERTICAL_SPACING), mOut[c],
+                    1e-4);
+        }
+    }
+
+    @Test
+    public void placesGridUnderLaunchPoint() {
+        WindField.Grid grid = new WindField.Grid(NX, NY, NZ, LAT, LON, SPACING, VERTICAL_SPACING,
+                data());
+        LocalFrame frame = new LocalFrame(LAT, LON);
+        double east = 150;
+        double north = 80;
+        WindField wind = grid.at(frame.latitude(north), frame.longitude(east));
+        wind.velocity(20, -30, 10, mOut);
+        for (int c = 0; c < 3; c++) {
+            assertEquals(field(c, east + 20, north - 30, 10), mOut[c], 1e-4);
+        }
+    }
+
+    @Test
+    public void loadsGrid() throws IOException {
+        File file = write(NX, NY, NZ, (float) SPACING, (float) VERTICAL_SPACING, data());
+        try {
+            WindField.Grid grid = WindField.Grid.load(file);
+            grid.velocity(130, 70, 20, mOut);
+            for (int c = 0; c < 3; c++) {
+                assertEquals(field(c, 130, 70, 20), mOut[c], 1e-4);
+            }
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void loadRejectsBadDimensions() throws IOException {
+        assertLoadFails(0, NY, NZ, (float) SPACING, (float) VERTICAL_SPACING);
+        assertLoadFails(NX, -1, NZ, (float) SPACING, (float) VERTICAL_SPACING);
+        assertLoadFails(1 << 12, 1 << 12, 1 << 12, (float) SPACING, (float) VERTICAL_SPACING);
+    }
+
+    @Test
+    public void loadRejectsBadSpacing() throws IOException {
+        assertLoadFails(NX, NY, NZ, Float.NaN, (float) VERTICAL_SPACING);
+        assertLoadFails(NX, NY, NZ, 0, (float) VERTICAL_SPACING);
+        assertLoadFails(NX, NY, NZ, (float) SPACING, Float.NaN);
+        assertLoadFails(NX, NY, NZ, (float) SPACING, (float) -VERTICAL_SPACING);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNaNSpacing() {
+        new WindField.Grid(NX, NY, NZ, LAT, LON, Double.NaN, VERTICAL_SPACING, data());
+    }
+
+    @Test
+    public void tailwindCarriesFurther() {
+        Flight still = new Flight();
+        PhysicsEngine.simulate(54, 0, Math.toRadians(30), PhysicsEngine.Integrator.RK4, 1e-3,
+                still, (double[]) null);
+        Flight tailwind = new Flight();
+        PhysicsEngine.simulate(54, 0, Math.toRadians(30), new WindField.Constant(0, 10, 0),
+                PhysicsEngine.Integrator.RK4, 1e-3, tailwind, (double[]) null);
+        Flight crosswind = new Flight();
+        PhysicsEngine.simulate(54, 0, Math.toRadians(30),
+                WindField.Constant.fromHeading(10, Math.PI / 2), PhysicsEngine.Integrator.RK4,
+                1e-3, crosswind, (double[]) null);
+
+        assertTrue(tailwind.distance > still.distance);
+        assertEquals(0, tailwind.impactEast, 1e-9);
+        assertTrue(crosswind.impactEast > 0);
+    }
+
+    /**
+     * @return component c of a wind made of the terms trilinear interpolation reproduces
+     */
+    private static double field(int c, double x, double y, double z) {
+        return (c + 1) + 0.01 * x - 0.02 * (c + 1) * y + 0.05 * z + 1e-6 * c * x * y * z;
+    }
+
+    private static float[] data() {
+        float[] data = new float[3 * NX * NY * NZ];
+        for (int k = 0; k < NZ; k++) {
+            for (int j = 0; j < NY; j++) {
+                for (int i = 0; i < NX; i++) {
+                    for (int c = 0; c < 3; c++) {
+                        data[3 * ((k * NY + j) * NX + i) + c] = (float) field(c, i * SPACING,
+                                j * SPACING, k * VERTICAL_SPACING);
+                    }
+                }
+            }
+        }
+        return data;
+    }
+
+    private static File write(int nx, int ny, int nz, float spacing, float verticalSpacing,
+                              float[] data) throws IOException {
+        File file = File.createTempFile("wind", ".grid");
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeInt(nx);
+            out.writeInt(ny);
+            out.writeInt(nz);
+            out.writeDouble(LAT);
+            out.writeDouble(LON);
+            out.writeFloat(spacing);
+            out.writeFloat(verticalSpacing);
+            for (float value : data) {
+                out.writeFloat(value);
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static void assertLoadFails(int nx, int ny, int nz, float spacing,
+                                        float verticalSpacing) throws IOException {
+        File file = write(nx, ny, nz, spacing, verticalSpacing, data());
+        try {
+            WindField.Grid.load(file);
+            fail("Loaded a grid of " + nx + " x " + ny + " x " + nz + " spaced " + spacing
+                    + " and " + verticalSpacing);
+        } catch (IOException expected) {
+            // rejected
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+}